@@ -0,0 +1,190 @@
+package nova.daniel.empatica.persistence;
+
+import android.database.Cursor;
+import android.os.Bundle;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import nova.daniel.empatica.TimeBuckets;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the appointment queries are served by the (uuid, date) and (date, room_number) indexes, and reports
+ * their latency with and without the indexes at 10,000 and 100,000 appointments.
+ * <p>
+ * 1,000,000 appointments take a while to insert on a device, so that size only runs when the instrumentation
+ * argument largeBenchmark is true:
+ * adb shell am instrument -w -e largeBenchmark true -e class nova.daniel.empatica.persistence.AppointmentIndexTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class AppointmentIndexTest {
+
+    private static final int NUM_CAREGIVERS = 1000;
+    private static final int NUM_ROOMS = 10;
+    private static final int DAYS = 365;
+    private static final long FIRST_DAY = 1546344000000L; // 2019-01-01 12:00 UTC
+    private static final int RUNS = 50;
+
+    // Queries of AppointmentDAO, with the table optionally marked NOT INDEXED
+    private static final String ROOMS_BY_DATE =
+            "SELECT room_number FROM Appointment%s WHERE date BETWEEN ? AND ?";
+    private static final String CAREGIVER_HOUR =
+            "SELECT EXISTS(SELECT 1 FROM Appointment%s WHERE uuid = ? AND appointmentId != ? " +
+                    "AND date BETWEEN ? AND ?)";
+    private static final String CAREGIVER_WEEK =
+            "SELECT COUNT(*) FROM Appointment%s WHERE uuid = ? AND appointmentId != ? AND date BETWEEN ? AND ?";
+    private static final String ROOM_HOUR =
+            "SELECT EXISTS(SELECT 1 FROM Appointment%s WHERE room_number = ? AND appointmentId != ? " +
+                    "AND date BETWEEN ? AND ?)";
+
+    private AppDatabase mDatabase;
+    private SupportSQLiteDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mDatabase = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getInstrumentation().getTargetContext(),
+                AppDatabase.class).build();
+        mDb = mDatabase.getOpenHelper().getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void queries_useTheAppointmentIndexes() {
+        fill(10000);
+        long day = TimeBuckets.dayStart(FIRST_DAY);
+        long hour = TimeBuckets.hourStart(FIRST_DAY);
+
+        assertPlanUses("index_Appointment_date_room_number", ROOMS_BY_DATE, day, TimeBuckets.dayEnd(day));
+        assertPlanUses("index_Appointment_uuid_date", CAREGIVER_HOUR, "c1", 0, hour, TimeBuckets.hourEnd(hour));
+        assertPlanUses("index_Appointment_uuid_date", CAREGIVER_WEEK, "c1", 0,
+                TimeBuckets.weekStart(day), TimeBuckets.weekEnd(day));
+        assertPlanUses("index_Appointment_date_room_number", ROOM_HOUR, 1, 0, hour, TimeBuckets.hourEnd(hour));
+    }
+
+    @Test
+    public void benchmark_indexedVsScan() {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        boolean large = Boolean.parseBoolean(arguments.getString("largeBenchmark", "false"));
+        int[] sizes = large ? new int[]{10000, 100000, 1000000} : new int[]{10000, 100000};
+
+        int filled = 0;
+        for (int size : sizes) {
+            fill(size - filled);
+            filled = size;
+
+            String[] names = {"rooms by date", "caregiver hour", "caregiver week", "room hour"};
+            String[] queries = {ROOMS_BY_DATE, CAREGIVER_HOUR, CAREGIVER_WEEK, ROOM_HOUR};
+            for (int i = 0; i < queries.length; i++) {
+                long indexed = timeQuery(queries[i], "");
+                long scan = timeQuery(queries[i], " NOT INDEXED");
+                System.out.println(String.format("AppointmentIndexTest: %,d appointments, %s: indexed %.3f ms, " +
+                        "scan %.3f ms", size, names[i], indexed / 1e6, scan / 1e6));
+                if (size >= 100000)
+                    assertTrue("Indexed query took " + indexed + " ns, scan " + scan, indexed < scan);
+            }
+        }
+    }
+
+    /**
+     * Average time of a query over random days, hours, caregivers and rooms
+     *
+     * @param sql    Query, formatted with the given table option
+     * @param option Empty, or NOT INDEXED to scan the table
+     * @return Average time in nanoseconds
+     */
+    private long timeQuery(String sql, String option) {
+        String query = String.format(sql, option);
+        Random random = new Random(1);
+        long total = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long day = TimeBuckets.dayStart(FIRST_DAY + random.nextInt(DAYS) * 24 * 60 * 60 * 1000L);
+            long hour = TimeBuckets.atHour(day, 8 + random.nextInt(10));
+            Object[] args;
+            if (sql.equals(ROOMS_BY_DATE))
+                args = new Object[]{day, TimeBuckets.dayEnd(day)};
+            else if (sql.equals(CAREGIVER_WEEK))
+                args = new Object[]{"c" + random.nextInt(NUM_CAREGIVERS), 0,
+                        TimeBuckets.weekStart(day), TimeBuckets.weekEnd(day)};
+            else if (sql.equals(CAREGIVER_HOUR))
+                args = new Object[]{"c" + random.nextInt(NUM_CAREGIVERS), 0, hour, TimeBuckets.hourEnd(hour)};
+            else
+                args = new Object[]{1 + random.nextInt(NUM_ROOMS), 0, hour, TimeBuckets.hourEnd(hour)};
+
+            long start = System.nanoTime();
+            try (Cursor cursor = mDb.query(new SimpleSQLiteQuery(query, args))) {
+                while (cursor.moveToNext())
+                    cursor.getLong(0);
+            }
+            total += System.nanoTime() - start;
+        }
+        return total / RUNS;
+    }
+
+    private void assertPlanUses(String index, String sql, Object... args) {
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = mDb.query(new SimpleSQLiteQuery("EXPLAIN QUERY PLAN " + String.format(sql, ""), args))) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext())
+                plan.append(cursor.getString(detail)).append('\n');
+        }
+        assertTrue("Expected " + index + " in plan:\n" + plan, plan.indexOf(index) >= 0);
+    }
+
+    private boolean isEmpty(String table) {
+        try (Cursor cursor = mDb.query("SELECT COUNT(*) FROM " + table)) {
+            return cursor.moveToFirst() && cursor.getLong(0) == 0;
+        }
+    }
+
+    /**
+     * Inserts the caregivers once, and then the given number of appointments at random hours of the year,
+     * in a single transaction
+     */
+    private void fill(int appointments) {
+        mDb.beginTransaction();
+        try {
+            if (isEmpty("Caregiver")) {
+                SupportSQLiteStatement caregiver = mDb.compileStatement(
+                        "INSERT INTO Caregiver (uuid, first_name, last_name, pic_url, content_hash) VALUES (?, ?, ?, '', 0)");
+                for (int i = 0; i < NUM_CAREGIVERS; i++) {
+                    caregiver.bindString(1, "c" + i);
+                    caregiver.bindString(2, "first" + i);
+                    caregiver.bindString(3, "last" + i);
+                    caregiver.executeInsert();
+                }
+            }
+
+            Random random = new Random(appointments);
+            SupportSQLiteStatement appointment = mDb.compileStatement(
+                    "INSERT INTO Appointment (patient_name, room_number, uuid, date) VALUES (?, ?, ?, ?)");
+            for (int i = 0; i < appointments; i++) {
+                long day = FIRST_DAY + random.nextInt(DAYS) * 24 * 60 * 60 * 1000L;
+                appointment.bindString(1, "patient" + i);
+                appointment.bindLong(2, 1 + random.nextInt(NUM_ROOMS));
+                appointment.bindString(3, "c" + random.nextInt(NUM_CAREGIVERS));
+                appointment.bindLong(4, TimeBuckets.atHour(day, 8 + random.nextInt(10)));
+                appointment.executeInsert();
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+}
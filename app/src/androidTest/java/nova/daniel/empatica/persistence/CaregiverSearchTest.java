@@ -0,0 +1,230 @@
+package nova.daniel.empatica.persistence;
+
+import androidx.paging.DataSource;
+import androidx.room.Room;
+import androidx.room.paging.LimitOffsetDataSource;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import nova.daniel.empatica.model.Caregiver;
+import nova.daniel.empatica.persistence.dao.CaregiverDAO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the caregiver search, from the text typed by the user to the rows matched in the caregiver_fts index,
+ * and reports the latency of the first page of a search over 10,000 caregivers.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CaregiverSearchTest {
+
+    private static final int PAGE_SIZE = 30;
+    private static final int NUM_CAREGIVERS = 10000;
+    private static final int RUNS = 200;
+
+    private AppDatabase mDatabase;
+    private CaregiverDAO mCaregiverDAO;
+
+    @Before
+    public void setUp() {
+        mDatabase = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getInstrumentation().getTargetContext(),
+                AppDatabase.class).build();
+        mCaregiverDAO = mDatabase.caregiverDAO();
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void toMatchQuery_makesEachWordAPrefix() {
+        assertEquals("jo* sm*", CaregiverRepository.toMatchQuery("Jo sm"));
+        assertEquals("jo* sm*", CaregiverRepository.toMatchQuery("  jo,  sm. "));
+        assertEquals("zo\u00eb* 42*", CaregiverRepository.toMatchQuery("Zo\u00eb 42"));
+        assertNull(CaregiverRepository.toMatchQuery(null));
+        assertNull(CaregiverRepository.toMatchQuery(""));
+        assertNull(CaregiverRepository.toMatchQuery(" - "));
+    }
+
+    @Test
+    public void toMatchQuery_dropsQuotesAndOperators() {
+        assertEquals("smith*", CaregiverRepository.toMatchQuery("\"smith"));
+        assertEquals("smith*", CaregiverRepository.toMatchQuery("'smith\""));
+        assertEquals("o* brien*", CaregiverRepository.toMatchQuery("O'Brien"));
+        assertEquals("smi*", CaregiverRepository.toMatchQuery("smi*"));
+        assertEquals("sm* th*", CaregiverRepository.toMatchQuery("sm*th"));
+        assertNull(CaregiverRepository.toMatchQuery("*"));
+        assertNull(CaregiverRepository.toMatchQuery("\"\"*"));
+        assertEquals("smith*", CaregiverRepository.toMatchQuery("-smith"));
+        assertEquals("first* name* john*", CaregiverRepository.toMatchQuery("first_name:john"));
+        // Upper case operators are lower cased into plain words
+        assertEquals("john* or* mary*", CaregiverRepository.toMatchQuery("john OR mary"));
+        assertEquals("john* near* smith*", CaregiverRepository.toMatchQuery("john NEAR smith"));
+    }
+
+    @Test
+    public void search_matchesPrefixesOfFirstAndLastNames() {
+        insertCaregivers();
+
+        assertEquals(Arrays.asList("c1", "c2", "c4"), search("smi"));
+        assertEquals(Arrays.asList("c1", "c3", "c4"), search("jo"));
+        // Each word can match either name
+        assertEquals(Arrays.asList("c1", "c4"), search("Jo sm"));
+        assertEquals(Arrays.asList("c1"), search("joh smi"));
+        assertEquals(Arrays.asList("c1"), search("SMITH JOHN"));
+        assertEquals(Arrays.asList("c1", "c2"), search("smith"));
+        assertEquals(Arrays.asList("c5"), search("zo\u00eb"));
+        assertEquals(new ArrayList<String>(), search("smithsonian"));
+        assertEquals(new ArrayList<String>(), search("mith"));
+    }
+
+    @Test
+    public void searchByLastName_isSortedByLastName() {
+        insertCaregivers();
+
+        List<String> ids = uuids(page(mCaregiverDAO.searchByLastNamePaged(CaregiverRepository.toMatchQuery("smi"))));
+        assertEquals(Arrays.asList("c4", "c1", "c2"), ids); // jones, smith, smithson
+    }
+
+    @Test
+    public void search_withQuotesAndOperators_neitherFailsNorExcludes() {
+        insertCaregivers();
+
+        assertEquals(Arrays.asList("c1", "c2"), search("\"smith"));
+        assertEquals(Arrays.asList("c1", "c2"), search("smith\""));
+        assertEquals(Arrays.asList("c1", "c2"), search("-smith"));
+        assertEquals(Arrays.asList("c1", "c2", "c4"), search("smi*"));
+        assertEquals(Arrays.asList("c6"), search("o'brien"));
+        assertEquals(Arrays.asList("c6"), search("O Bri"));
+        assertEquals(Arrays.asList("c1", "c3", "c4"), search("jo*)"));
+        assertEquals(new ArrayList<String>(), search("john OR mary"));
+        assertEquals(new ArrayList<String>(), search("last_name:smith"));
+    }
+
+    @Test
+    public void search_followsUpdatesAndDeletes() {
+        insertCaregivers();
+
+        Caregiver caregiver = caregiver("c3", "joan", "white");
+        mCaregiverDAO.insert(caregiver);
+        assertEquals(Arrays.asList("c3"), search("whi"));
+        assertEquals(Arrays.asList("c1", "c2", "c4"), search("smi"));
+
+        SupportSQLiteDatabase db = mDatabase.getOpenHelper().getWritableDatabase();
+        db.execSQL("DELETE FROM Caregiver WHERE uuid = 'c1'");
+        assertEquals(Arrays.asList("c2", "c4"), search("smi"));
+    }
+
+    /**
+     * Reports the median and 95th percentile latency of the first page of a search, with one and two words
+     */
+    @Test
+    public void benchmark_searchLatency() {
+        fill(NUM_CAREGIVERS);
+        Random random = new Random(23);
+
+        for (boolean byLastName : new boolean[]{false, true}) {
+            long[] times = new long[RUNS];
+            int found = 0;
+            for (int i = 0; i < RUNS; i++) {
+                String text = (random.nextInt(2) == 0 ? "" : "first" + random.nextInt(100) + " ")
+                        + "last" + random.nextInt(1000);
+                String query = CaregiverRepository.toMatchQuery(text);
+
+                long start = System.nanoTime();
+                DataSource.Factory<Integer, Caregiver> factory = byLastName
+                        ? mCaregiverDAO.searchByLastNamePaged(query) : mCaregiverDAO.searchPaged(query);
+                found += page(factory).size();
+                times[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(times);
+            System.out.println(String.format("CaregiverSearchTest: %,d caregivers, search%s: p50 %.3f ms, " +
+                            "p95 %.3f ms", NUM_CAREGIVERS, byLastName ? " by last name" : "",
+                    times[RUNS / 2] / 1e6, times[RUNS * 95 / 100] / 1e6));
+            assertTrue(found > 0);
+        }
+    }
+
+    private List<String> search(String text) {
+        String query = CaregiverRepository.toMatchQuery(text);
+        if (query == null)
+            return new ArrayList<>();
+        return uuids(page(mCaregiverDAO.searchPaged(query)));
+    }
+
+    /**
+     * First page of the factory, as the paged list would load it
+     */
+    private static List<Caregiver> page(DataSource.Factory<Integer, Caregiver> factory) {
+        return ((LimitOffsetDataSource<Caregiver>) factory.create()).loadRange(0, PAGE_SIZE);
+    }
+
+    private static List<String> uuids(List<Caregiver> caregivers) {
+        List<String> ids = new ArrayList<>();
+        for (Caregiver caregiver : caregivers)
+            ids.add(caregiver.uuid);
+        return ids;
+    }
+
+    /**
+     * Inserts the caregivers searched by the tests, in the order of their ids. Names are saved in lower case,
+     * as the API returns them.
+     */
+    private void insertCaregivers() {
+        mCaregiverDAO.insert(
+                caregiver("c1", "john", "smith"),
+                caregiver("c2", "mary", "smithson"),
+                caregiver("c3", "joan", "doe"),
+                caregiver("c4", "smitty", "jones"),
+                caregiver("c5", "zo\u00eb", "martin"),
+                caregiver("c6", "sean", "o'brien"));
+    }
+
+    private static Caregiver caregiver(String uuid, String firstName, String lastName) {
+        Caregiver caregiver = new Caregiver();
+        caregiver.uuid = uuid;
+        caregiver.mFirstName = firstName;
+        caregiver.mLastName = lastName;
+        caregiver.mPictureURL = "https://randomuser.me/api/portraits/thumb/men/1.jpg";
+        caregiver.mContentHash = caregiver.computeContentHash();
+        return caregiver;
+    }
+
+    /**
+     * Inserts the given number of caregivers in a single transaction, named first0 to first99 and
+     * last0 to last999, so most prefixes match several caregivers
+     */
+    private void fill(int caregivers) {
+        SupportSQLiteDatabase db = mDatabase.getOpenHelper().getWritableDatabase();
+        Random random = new Random(caregivers);
+        db.beginTransaction();
+        try {
+            SupportSQLiteStatement caregiver = db.compileStatement(
+                    "INSERT INTO Caregiver (uuid, first_name, last_name, pic_url, content_hash) VALUES (?, ?, ?, '', 0)");
+            for (int i = 0; i < caregivers; i++) {
+                caregiver.bindString(1, "c" + i);
+                caregiver.bindString(2, "first" + random.nextInt(100));
+                caregiver.bindString(3, "last" + random.nextInt(1000));
+                caregiver.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package nova.daniel.empatica.persistence;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nova.daniel.empatica.api.ThumbnailPrefetcher;
+import nova.daniel.empatica.model.Caregiver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link CaregiverSyncEngine} on an in-memory database, with pages served on the main thread instead of
+ * the API, and checks every sync completes, also when the database fails.
+ * <p>
+ * Writes are made to fail by a trigger that aborts the inserts of caregivers, and reads by dropping the table
+ * of the page metadata.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CaregiverSyncEngineTest {
+
+    private static final long TIMEOUT_S = 10;
+    private static final int[] PAGES = {1, 2};
+
+    private AppDatabase mDatabase;
+    private SupportSQLiteDatabase mDb;
+    private CaregiverSyncEngine mEngine;
+    private final Handler mMainThread = new Handler(Looper.getMainLooper());
+    private final AtomicInteger mFetches = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mDatabase = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        mDb = mDatabase.getOpenHelper().getWritableDatabase();
+        DatabaseExecutors executors = DatabaseExecutors.getInstance();
+        mEngine = new CaregiverSyncEngine(context, mDatabase.caregiverPageDAO(),
+                new CaregiverWriteBuffer(mDatabase.caregiverDAO(), executors), executors,
+                ThumbnailPrefetcher.getInstance(context),
+                (page, results, listener) -> {
+                    mFetches.incrementAndGet();
+                    mMainThread.post(() -> listener.resultCallback(caregivers(page, results)));
+                });
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void sync_savesThePages_andSkipsThemWhileFresh() throws InterruptedException {
+        assertTrue(sync());
+        assertEquals(2, mFetches.get());
+        assertTrue(queryLong("SELECT COUNT(*) FROM Caregiver") > 0);
+        assertEquals(2, queryLong("SELECT COUNT(*) FROM caregiver_page"));
+
+        assertTrue(sync());
+        assertEquals(2, mFetches.get());
+    }
+
+    @Test
+    public void failedWrite_completesTheSync_andThePagesCanBeFetchedAgain() throws InterruptedException {
+        mDb.execSQL("CREATE TRIGGER fail_caregiver_insert BEFORE INSERT ON Caregiver " +
+                "BEGIN SELECT RAISE(ABORT, 'write failed'); END");
+
+        assertFalse(sync());
+        assertEquals(2, mFetches.get());
+        // Pages whose caregivers were not saved are not marked as synced
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM caregiver_page"));
+
+        // The failed pages are no longer in flight, so the next sync fetches them instead of waiting forever
+        mDb.execSQL("DROP TRIGGER fail_caregiver_insert");
+        assertTrue(sync());
+        assertEquals(4, mFetches.get());
+        assertEquals(2, queryLong("SELECT COUNT(*) FROM caregiver_page"));
+    }
+
+    @Test
+    public void failedMetadataRead_completesTheSyncAsFailed() throws InterruptedException {
+        mDb.execSQL("DROP TABLE caregiver_page");
+
+        assertFalse(sync());
+        assertEquals(0, mFetches.get());
+    }
+
+    /**
+     * Syncs the pages from the main thread, and waits for the listener
+     *
+     * @return Result given to the listener
+     */
+    private boolean sync() throws InterruptedException {
+        BlockingQueue<Boolean> result = new LinkedBlockingQueue<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> mEngine.sync(PAGES, false, result::add));
+        Boolean succeeded = result.poll(TIMEOUT_S, TimeUnit.SECONDS);
+        assertTrue("The sync never completed", succeeded != null);
+        return succeeded;
+    }
+
+    private static List<Caregiver> caregivers(int page, int results) {
+        List<Caregiver> caregivers = new ArrayList<>(results);
+        for (int i = 0; i < results; i++) {
+            Caregiver caregiver = new Caregiver();
+            caregiver.uuid = "p" + page + "-" + i;
+            caregiver.mFirstName = "first" + i;
+            caregiver.mLastName = "last" + page;
+            caregivers.add(caregiver);
+        }
+        return caregivers;
+    }
+
+    private long queryLong(String sql) {
+        try (Cursor cursor = mDb.query(sql)) {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        }
+    }
+}
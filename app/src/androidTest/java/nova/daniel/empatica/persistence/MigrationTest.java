@@ -0,0 +1,195 @@
+package nova.daniel.empatica.persistence;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.room.Room;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs each migration of {@link AppDatabase} on a database created from the exported schema of its start
+ * version, and validates the result against the exported schema of its end version.
+ * Saved appointments and caregivers must be kept by every migration.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+
+    private static final String TEST_DB = "migration-test";
+
+    private static final long DATE = 1568808000000L; // 2019-09-18 12:00 UTC
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(InstrumentationRegistry.getInstrumentation(),
+            AppDatabase.class.getCanonicalName(), new FrameworkSQLiteOpenHelperFactory());
+
+    @Test
+    public void migrate1To2() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1);
+        insertCaregiver(db, "c1", "john", "smith");
+        insertEmbeddedAppointment(db, 1, "c1", "john", "smith");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 2, true, AppDatabase.MIGRATION_1_2);
+
+        assertEquals(0, queryLong(db, "SELECT content_hash FROM Caregiver WHERE uuid = 'c1'"));
+        assertEquals(1, queryLong(db, "SELECT COUNT(*) FROM Appointment WHERE uuid = 'c1' AND room_number = 1"));
+        assertEquals(0, queryLong(db, "SELECT COUNT(*) FROM caregiver_page"));
+    }
+
+    @Test
+    public void migrate2To3() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 2);
+        insertCaregiver(db, "c1", "john", "smith");
+        insertEmbeddedAppointment(db, 1, "c1", "john", "smith");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 3, true, AppDatabase.MIGRATION_2_3);
+
+        assertEquals(1, queryLong(db, "SELECT COUNT(*) FROM Appointment"));
+        assertIndexExists(db, "index_Appointment_uuid_date");
+        assertIndexExists(db, "index_Appointment_date_room_number");
+    }
+
+    @Test
+    public void migrate3To4_keepsAppointmentsOfUnknownCaregivers() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 3);
+        insertCaregiver(db, "c1", "john", "smith");
+        db.execSQL("UPDATE Caregiver SET content_hash = 7 WHERE uuid = 'c1'");
+        insertEmbeddedAppointment(db, 1, "c1", "john", "smith");
+        // Caregiver only known through its appointments
+        insertEmbeddedAppointment(db, 2, "c2", "mary", "jones");
+        insertEmbeddedAppointment(db, 3, "c2", "mary", "jones");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 4, true, AppDatabase.MIGRATION_3_4);
+
+        assertEquals(3, queryLong(db, "SELECT COUNT(*) FROM Appointment"));
+        assertEquals(2, queryLong(db, "SELECT COUNT(*) FROM Appointment WHERE uuid = 'c2'"));
+        assertEquals(2, queryLong(db, "SELECT COUNT(*) FROM Caregiver"));
+        assertEquals(7, queryLong(db, "SELECT content_hash FROM Caregiver WHERE uuid = 'c1'"));
+        assertEquals(1, queryLong(db, "SELECT COUNT(*) FROM Caregiver WHERE uuid = 'c2' AND last_name = 'jones'"));
+        // The foreign key now cascades deletes of caregivers to their appointments
+        db.execSQL("PRAGMA foreign_keys = ON");
+        db.execSQL("DELETE FROM Caregiver WHERE uuid = 'c2'");
+        assertEquals(1, queryLong(db, "SELECT COUNT(*) FROM Appointment"));
+    }
+
+    @Test
+    public void migrate4To5() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 4);
+        insertCaregiver(db, "c1", "john", "smith");
+        insertAppointment(db, 1, "c1");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 5, true, AppDatabase.MIGRATION_4_5);
+
+        assertEquals(1, queryLong(db, "SELECT COUNT(*) FROM Appointment"));
+        assertIndexExists(db, "index_Caregiver_last_name");
+    }
+
+    @Test
+    public void migrate5To6_indexesExistingCaregivers() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 5);
+        insertCaregiver(db, "c1", "john", "smith");
+        insertCaregiver(db, "c2", "mary", "jones");
+        insertAppointment(db, 1, "c1");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 6, true, AppDatabase.MIGRATION_5_6);
+
+        assertEquals(1, queryLong(db, "SELECT COUNT(*) FROM Appointment"));
+        assertEquals(1, queryLong(db, "SELECT COUNT(*) FROM caregiver_fts WHERE caregiver_fts MATCH 'smi*'"));
+        // Caregivers saved after the migration are indexed by the triggers
+        insertCaregiver(db, "c3", "anna", "smithson");
+        assertEquals(2, queryLong(db, "SELECT COUNT(*) FROM caregiver_fts WHERE caregiver_fts MATCH 'smi*'"));
+    }
+
+    /**
+     * Migrates from the first version to the last, and opens the result with Room, which checks it
+     * against the schema of the compiled {@link AppDatabase}.
+     */
+    @Test
+    public void migrateAll_opensWithRoom() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1);
+        insertCaregiver(db, "c1", "john", "smith");
+        insertEmbeddedAppointment(db, 4, "c1", "john", "smith");
+        insertEmbeddedAppointment(db, 5, "c2", "mary", "jones");
+        db.close();
+
+        helper.runMigrationsAndValidate(TEST_DB, 6, true, AppDatabase.MIGRATIONS);
+
+        AppDatabase database = Room.databaseBuilder(InstrumentationRegistry.getInstrumentation().getTargetContext(),
+                AppDatabase.class, TEST_DB)
+                .addMigrations(AppDatabase.MIGRATIONS)
+                .build();
+        helper.closeWhenFinished(database);
+        List<Integer> rooms = database.appointmentDAO().getRoomsByDateSync(DATE - 1, DATE + 1);
+        assertEquals(2, rooms.size());
+        assertTrue(rooms.contains(4) && rooms.contains(5));
+        assertEquals(2, database.caregiverDAO().getAllIdsSync().size());
+    }
+
+    private static void insertCaregiver(SupportSQLiteDatabase db, String uuid, String firstName, String lastName) {
+        ContentValues values = new ContentValues();
+        values.put("uuid", uuid);
+        values.put("first_name", firstName);
+        values.put("last_name", lastName);
+        values.put("pic_url", "https://randomuser.me/api/portraits/thumb/men/1.jpg");
+        db.insert("Caregiver", SQLiteDatabase.CONFLICT_FAIL, values);
+    }
+
+    /**
+     * Inserts an appointment with the columns of its caregiver embedded, as in versions 1 to 3
+     */
+    private static void insertEmbeddedAppointment(SupportSQLiteDatabase db, int room, String uuid,
+                                                  String firstName, String lastName) {
+        ContentValues values = new ContentValues();
+        values.put("patient_name", "patient" + room);
+        values.put("room_number", room);
+        values.put("uuid", uuid);
+        values.put("first_name", firstName);
+        values.put("last_name", lastName);
+        values.put("pic_url", "https://randomuser.me/api/portraits/thumb/men/1.jpg");
+        values.put("date", DATE);
+        db.insert("Appointment", SQLiteDatabase.CONFLICT_FAIL, values);
+    }
+
+    /**
+     * Inserts an appointment referencing its caregiver, from version 4
+     */
+    private static void insertAppointment(SupportSQLiteDatabase db, int room, String uuid) {
+        ContentValues values = new ContentValues();
+        values.put("patient_name", "patient" + room);
+        values.put("room_number", room);
+        values.put("uuid", uuid);
+        values.put("date", DATE);
+        db.insert("Appointment", SQLiteDatabase.CONFLICT_FAIL, values);
+    }
+
+    private static void assertIndexExists(SupportSQLiteDatabase db, String name) {
+        assertEquals("Missing index " + name, 1,
+                queryLong(db, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = '" + name + "'"));
+    }
+
+    private static long queryLong(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        }
+    }
+}
@@ -5,14 +5,28 @@ import android.os.AsyncTask;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+
+import nova.daniel.empatica.autofit.AssignmentStrategy;
+import nova.daniel.empatica.autofit.CandidateScorer;
+import nova.daniel.empatica.autofit.CaregiverIndex;
+import nova.daniel.empatica.autofit.FairnessRule;
+import nova.daniel.empatica.autofit.GreedyAssignment;
+import nova.daniel.empatica.autofit.OptimalAssignment;
+import nova.daniel.empatica.autofit.OvertimeRule;
+import nova.daniel.empatica.autofit.RoomProximityRule;
+import nova.daniel.empatica.autofit.ScheduleSnapshot;
+import nova.daniel.empatica.autofit.ScoringRule;
+import nova.daniel.empatica.autofit.SlotAssignment;
 import nova.daniel.empatica.model.Appointment;
 import nova.daniel.empatica.model.Caregiver;
-import nova.daniel.empatica.model.CountWork;
 import nova.daniel.empatica.persistence.AppointmentRepository;
 import nova.daniel.empatica.persistence.CaregiverRepository;
 import nova.daniel.empatica.ui.MainActivity;
@@ -21,6 +35,7 @@ import nova.daniel.empatica.ui.MainActivity;
  * Task that implements the auto-fit feature of the application.
  * For every time-slot of the day, and for every available room in the hospital,
  * the task assigns a caregiver.
+ * The task can schedule a single day, or several days of the same week in one pass.
  * <p>
  * Caregivers are added depending on which caregiver is best suited based on a score.
  * Initially all caregivers are candidates, depending on the amount of hours they have worked in the
@@ -36,12 +51,19 @@ import nova.daniel.empatica.ui.MainActivity;
  * - If the caregiver does not have any over-time for the current week, a score of 1 is added
  * - If the caregiver is already working that day, a score is added depending on the distance of the rooms they are working on
  * - If the caregiver is amongst those that have worked the least in the past 4 weeks, a score of 3 is added.
+ * Each criterion is implemented as a {@link ScoringRule}, and applied to all candidates by a {@link CandidateScorer}.
+ * <p>
+ * Rooms are filled greedily by default. Alternatively, the {@link Strategy#OPTIMAL} strategy solves each hour
+ * as an assignment problem, so an early room cannot take the caregiver a later room needed.
  * <p>
  * <p>
  * All calls to the repositories are done synchronously, as it is needed to guarantee consistency and because
  * the queueing nature of AsyncTasks in android.
+ * The workload of every caregiver is read once into a {@link ScheduleSnapshot}, which is updated with every
+ * assigned slot, so no queries are issued while going through the rooms and candidates.
+ * The assigned slots are written once all days have been planned, in a single transaction.
  */
-public class AutoFitOperationTask extends AsyncTask<Void, Void, Void> {
+public class AutoFitOperationTask extends AsyncTask<Void, Integer, Void> {
 
     private static final int START_HOUR_WORKDAY = 9;
     private static final int END_HOUR_WORKDAY = 17;
@@ -49,15 +71,33 @@ public class AutoFitOperationTask extends AsyncTask<Void, Void, Void> {
     private static final int MAX_OVERTIME_HOURS = 1;
 
     private WeakReference<Context> mContext; // Calling context reference
-    private Date mDate;
+    private List<Date> mDays; // Days to schedule, all in the same week
+    private Strategy mStrategy;
 
     private CaregiverRepository mCaregiverRepository;
     private AppointmentRepository mAppointmentRepository;
     private AutoFitCallBack uiCallback;
 
     public AutoFitOperationTask(Context context, Date date) {
+        this(context, date, Strategy.GREEDY);
+    }
+
+    public AutoFitOperationTask(Context context, Date date, Strategy strategy) {
+        this(context, Collections.singletonList(date), strategy);
+    }
+
+    /**
+     * Constructor to schedule several days in a single pass.
+     * The weekly hour limits are kept across all days, and the whole plan is written at the end.
+     *
+     * @param context  Calling context
+     * @param days     Days to schedule, all of them must be in the same week
+     * @param strategy Strategy used to assign the caregivers of each hour
+     */
+    public AutoFitOperationTask(Context context, List<Date> days, Strategy strategy) {
         mContext = new WeakReference<>(context);
-        mDate = date;
+        mDays = days;
+        mStrategy = strategy;
         uiCallback = (MainActivity) mContext.get();
         mCaregiverRepository = new CaregiverRepository(context, false);
         mAppointmentRepository = new AppointmentRepository(context);
@@ -65,104 +105,76 @@ public class AutoFitOperationTask extends AsyncTask<Void, Void, Void> {
 
     @Override
     protected Void doInBackground(Void... voids) {
-        List<String> mCaregiverIds = mCaregiverRepository.getAllIDsSync();
-
-        // Go through each time-slot of the working day
-        for (int hour = START_HOUR_WORKDAY; hour < END_HOUR_WORKDAY; hour++) {
-            mDate = Utils.setHourDate(mDate, hour);
-
-            List<Integer> takenRooms = mAppointmentRepository.getRoomsForCaregiverByHour(mDate);
-            List<Integer> availableRooms = getAvailableRooms(takenRooms);
-
-            // Go through each available room
-            for (int roomNumber : availableRooms) {
-                // Initialize candidates
-                Map<String, Double> candidates = initializeCandidates(mCaregiverIds);
-
-                // Remove those that are already assigned for the current time-slot, as they are considered unavailable
-                candidates.keySet().removeAll(mAppointmentRepository.getCaregiversForHourSync(mDate));
-
-                // Get caregivers that have worked the least amount of hours in the past 4 weeks
-                List<String> caregiversLeastWorkedHours = getCaregiversLessWorkedHours();
-
-                // Go through each candidate
-                for (String candidateId : new ArrayList<>(candidates.keySet())) {
-                    // Check how many hours this candidate has worked the current week
-                    int countWeekAppointments = mAppointmentRepository.countCaregiverSlotsForWeekSync(mDate, candidateId);
-
-                    // Ignore caregivers that could exceed the max amount of work hours
-                    if (countWeekAppointments >= MAX_WORK_HOURS + MAX_OVERTIME_HOURS) { // 5 hours per week + 1 overtime
-                        // remove this candidate form the task, as they cannot be possible assigned to any slot the current day
-                        mCaregiverIds.remove(candidateId);
-                        candidates.remove(candidateId);
-                    } else { // caregiver is an eligible candidate, so now compute a score for them
-                        if (countWeekAppointments < MAX_WORK_HOURS)  // No overtime
-                            candidates.put(candidateId, 1d); // add a score of 1
-
-                        // For caregivers working the same day, add a score based on the distance of the room
-                        double roomScore = roomProximityScore(roomNumber, candidateId);
-                        candidates.merge(candidateId, roomScore, Double::sum);
-
-                        // If the caregiver is amongst those who have worked less hours in the last 4 weeks, add an extra score of 3
-                        if (caregiversLeastWorkedHours.contains(candidateId))
-                            candidates.merge(candidateId, 3d, Double::sum);
-                    }
-                }
-                // Now, pick candidate with best score
-                String candidateID = Utils.getMaxScoreCandidate(candidates);
-                // Check if a best candidate exists, if so insert into the repository
-                if (!candidateID.equalsIgnoreCase("")) {
-                    createAndInsertAppointment(candidateID, mDate, roomNumber);
+        CaregiverIndex index = new CaregiverIndex(mCaregiverRepository.getAllIDsSync());
+
+        // Load the appointments of the current and past weeks once, the loops below only read from the snapshot
+        ScheduleSnapshot snapshot = ScheduleSnapshot.load(mCaregiverRepository, mDays, index);
+        CandidateScorer scorer = new CandidateScorer(snapshot, MAX_WORK_HOURS + MAX_OVERTIME_HOURS, createScoringRules());
+        AssignmentStrategy strategy = mStrategy.create();
+        // Slots assigned for all days, written to the repository once the whole range is planned
+        List<SlotAssignment> plan = new ArrayList<>();
+
+        for (int day = 0; day < mDays.size(); day++) {
+            snapshot.selectDay(day);
+            publishProgress(day + 1);
+
+            // Go through each time-slot of the working day
+            for (int hour = START_HOUR_WORKDAY; hour < END_HOUR_WORKDAY; hour++) {
+                Date date = Utils.setHourDate(mDays.get(day), hour);
+
+                List<Integer> takenRooms = snapshot.getRoomsForHour(hour);
+                List<Integer> availableRooms = getAvailableRooms(takenRooms);
+
+                // Assign a caregiver to each available room, the strategy keeps the snapshot up to date
+                int[] candidates = strategy.assignHour(snapshot, scorer, hour, availableRooms);
+                for (int i = 0; i < candidates.length; i++) {
+                    // Check if a best candidate exists, if so add it to the plan
+                    if (candidates[i] != CandidateScorer.NO_CANDIDATE)
+                        plan.add(new SlotAssignment(index.getId(candidates[i]), date, availableRooms.get(i)));
                 }
             }
         }
+        insertPlan(plan);
         return null;
     }
 
     /**
-     * Once the task is done, callback {@link MainActivity} to dismiss the progress dialog.
-     * If the activity has been destroyed, the method does not do anything else.
+     * Reports to {@link MainActivity} the day currently being scheduled.
      *
-     * @param aVoid void
+     * @param values Number of the day being scheduled, starting from 1
      */
     @Override
-    protected void onPostExecute(Void aVoid) {
-        super.onPostExecute(aVoid);
+    protected void onProgressUpdate(Integer... values) {
+        super.onProgressUpdate(values);
         if (mContext.get() != null) {
-            uiCallback.onFinishedAutoFit();
+            uiCallback.onAutoFitProgress(values[0], mDays.size());
         }
     }
 
     /**
-     * Get a list of the caregivers that have worked the least number of hours in the past 4 weeks.
+     * Once the task is done, callback {@link MainActivity} to dismiss the progress dialog.
+     * If the activity has been destroyed, the method does not do anything else.
      *
-     * @return List of caregivers IDs
+     * @param aVoid void
      */
-    private List<String> getCaregiversLessWorkedHours() {
-        List<CountWork> caregiversHoursCount = mCaregiverRepository.getByAppointmentCountLastWeeks(mDate); // result truncated to 10
-        List<String> result = new ArrayList<>();
-
-        if (caregiversHoursCount.size() > 0) {
-            // the list is sorted by counts, so the first element is always guaranteed to have the minimum
-            int minHours = caregiversHoursCount.get(0).counts;
-            for (CountWork c : caregiversHoursCount)
-                if (c.counts <= minHours)
-                    result.add(c.uuid);
+    @Override
+    protected void onPostExecute(Void aVoid) {
+        super.onPostExecute(aVoid);
+        if (mContext.get() != null) {
+            uiCallback.onFinishedAutoFit();
         }
-        return result;
     }
 
     /**
-     * Initialize the candidates Map
+     * Creates the rules used to score each candidate, see the class description for the criteria.
      *
-     * @param caregivers list of caregivers ids
-     * @return Candidates Map, with the caregiver ID as ID, and its score as value. Initialized to 0
+     * @return List of scoring rules
      */
-    private Map<String, Double> initializeCandidates(List<String> caregivers) {
-        Map<String, Double> candidates = new HashMap<>(caregivers.size());
-        for (String caregiverId : caregivers)
-            candidates.put(caregiverId, 0d);  // initialize all scores to 0
-        return candidates;
+    private List<ScoringRule> createScoringRules() {
+        return Arrays.asList(
+                new OvertimeRule(MAX_WORK_HOURS, 1d),
+                new RoomProximityRule(2d),
+                new FairnessRule(3d));
     }
 
     /**
@@ -176,46 +188,48 @@ public class AutoFitOperationTask extends AsyncTask<Void, Void, Void> {
     }
 
     /**
-     * Computes the room proximity score of a given room and candidate based on the distance between rooms.
-     * It fetches the appointment rooms for a specific candidate on the current date.
-     * If no appointments exist, the score remains 0.
-     * <p>
-     * If the rooms are the same, a score of 2 is assigned. Otherwise it is computed as 2/distance
+     * Creates the Appointment objects for every slot in the plan and sends them to the repository to be saved
+     * in a single transaction.
+     * The caregivers of the plan are fetched with a single query.
      *
-     * @param currentRoom Room number being analyzed
-     * @param candidateId Target candidate ID
-     * @return Score
+     * @param plan Assigned slots
      */
-    private double roomProximityScore(int currentRoom, String candidateId) {
-        double score = 0;
-        // Get the rooms the caregiver has been assigned to in the current day
-        List<Integer> dayRooms = mAppointmentRepository.getRoomsForCaregiverByDay(mDate, candidateId);
-        for (int room : dayRooms) {
-            int distance = Math.abs(room - currentRoom);
-            double newScore = distance == 0 ? 2d : 2d / distance;
-            if (newScore > score)
-                score = newScore;
-        }
-        return score;
+    private void insertPlan(List<SlotAssignment> plan) {
+        if (plan.isEmpty())
+            return;
+
+        Set<String> caregiverIds = new HashSet<>();
+        for (SlotAssignment slot : plan)
+            caregiverIds.add(slot.caregiverId);
+
+        Map<String, Caregiver> caregivers = new HashMap<>(caregiverIds.size());
+        for (Caregiver caregiver : mCaregiverRepository.getByIDSync(caregiverIds.toArray(new String[0])))
+            caregivers.put(caregiver.uuid, caregiver);
+
+        List<Appointment> appointments = new ArrayList<>(plan.size());
+        for (SlotAssignment slot : plan)
+            appointments.add(new Appointment(slot.date, caregivers.get(slot.caregiverId), "", slot.room));
+        mAppointmentRepository.insertAllSync(appointments);
     }
 
     /**
-     * Creates a new Appointment object and sends it to the repository to be saved
-     *
-     * @param caregiverID Id of the caregiver
-     * @param date        Date
-     * @param room        Room number
+     * Strategies available to assign the caregivers of each hour.
+     * - GREEDY: fills the rooms one at a time with the best candidate, see {@link GreedyAssignment}
+     * - OPTIMAL: maximizes the total score of each hour, see {@link OptimalAssignment}
      */
-    private void createAndInsertAppointment(final String caregiverID, final Date date, final int room) {
-        List<Caregiver> caregivers = mCaregiverRepository.getByIDSync(new String[]{caregiverID});
+    public enum Strategy {
+        GREEDY,
+        OPTIMAL;
 
-        Caregiver caregiver = caregivers.get(0);
-        Appointment newAppointment = new Appointment(date, caregiver, "", room);
-        mAppointmentRepository.insertSync(newAppointment);
+        AssignmentStrategy create() {
+            return this == OPTIMAL ? new OptimalAssignment() : new GreedyAssignment();
+        }
     }
 
     // Callback when the task is completed
     public interface AutoFitCallBack {
+        void onAutoFitProgress(int day, int totalDays);
+
         void onFinishedAutoFit();
     }
 }
\ No newline at end of file
@@ -0,0 +1,214 @@
+package nova.daniel.empatica;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Time bucketing on epoch times, in the default time zone, without allocating.
+ * <p>
+ * All methods take and return epoch times in milliseconds. Bounds are computed with plain arithmetic on the local
+ * time, and converted back with the offsets of the cached {@link TimeZone}, whose transition table already holds
+ * the offset of every instant. Day and week bounds match the Calendar based helpers they replaced, including on
+ * daylight saving days, where wall times such as 00:00 and 23:59 are kept.
+ * The only differences are:
+ * - Within the hour repeated when clocks go back, the hour bounds are those of the hour actually containing the
+ * given time.
+ * - When a transition is not at the start of an hour, as on Lord Howe Island or the Chatham Islands, the bounds of
+ * the hour it cuts stop at the transition, so they always contain the given time. Calendar returns times outside
+ * of the hour there.
+ * - When a transition is just after midnight, as in St. John's until 2011, days start at midnight. Calendar
+ * returns a time after the transition.
+ * <p>
+ * The time zone and first day of the week are read once, call {@link #reset()} if they change,
+ * e.g. on ACTION_TIMEZONE_CHANGED.
+ */
+public final class TimeBuckets {
+
+    public static final long MILLIS_PER_MINUTE = 60 * 1000L;
+    public static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    public static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+    public static final long MILLIS_PER_WEEK = 7 * MILLIS_PER_DAY;
+
+    // 1970-01-01, the epoch day 0, was a Thursday
+    private static final int EPOCH_DAY_OF_WEEK = Calendar.THURSDAY;
+
+    private static volatile TimeZone sTimeZone;
+    private static volatile int sFirstDayOfWeek;
+
+    static {
+        reset();
+    }
+
+    private TimeBuckets() {
+    }
+
+    /**
+     * Reads again the default time zone and the first day of the week of the default locale.
+     */
+    public static void reset() {
+        sTimeZone = TimeZone.getDefault();
+        sFirstDayOfWeek = Calendar.getInstance().getFirstDayOfWeek();
+    }
+
+    /**
+     * @param epochMillis Epoch time
+     * @return Hour of the day, from 0 to 23
+     */
+    public static int hourOfDay(long epochMillis) {
+        return (int) (Math.floorMod(toLocal(epochMillis), MILLIS_PER_DAY) / MILLIS_PER_HOUR);
+    }
+
+    /**
+     * @param epochMillis Epoch time
+     * @return Start of the hour, with minutes, seconds and milliseconds set to 0, or the transition that started
+     * the hour if it is later
+     */
+    public static long hourStart(long epochMillis) {
+        TimeZone timeZone = sTimeZone;
+        int offset = timeZone.getOffset(epochMillis);
+        long start = epochMillis - Math.floorMod(epochMillis + offset, MILLIS_PER_HOUR);
+        if (timeZone.getOffset(start) == offset)
+            return start;
+        return transition(start, epochMillis);
+    }
+
+    /**
+     * @param epochMillis Epoch time
+     * @return Last second of the hour, i.e. hh:59:59, or the second before the transition that ends the hour
+     * if it is earlier
+     */
+    public static long hourEnd(long epochMillis) {
+        TimeZone timeZone = sTimeZone;
+        int offset = timeZone.getOffset(epochMillis);
+        long end = epochMillis - Math.floorMod(epochMillis + offset, MILLIS_PER_HOUR) + MILLIS_PER_HOUR - 1000;
+        if (timeZone.getOffset(end) == offset)
+            return end;
+        return transition(epochMillis, end) - 1000;
+    }
+
+    /**
+     * @param epochMillis Epoch time
+     * @param hour        Hour of the day
+     * @return Start of the given hour, in the same day
+     */
+    public static long atHour(long epochMillis, int hour) {
+        return toUtc(localDay(epochMillis) * MILLIS_PER_DAY + hour * MILLIS_PER_HOUR);
+    }
+
+    /**
+     * @param epochMillis Epoch time
+     * @return Midnight of the day, 00:00
+     */
+    public static long dayStart(long epochMillis) {
+        return toUtc(localDay(epochMillis) * MILLIS_PER_DAY);
+    }
+
+    /**
+     * @param epochMillis Epoch time
+     * @return Last minute of the day, 23:59
+     */
+    public static long dayEnd(long epochMillis) {
+        return toUtc((localDay(epochMillis) + 1) * MILLIS_PER_DAY - MILLIS_PER_MINUTE);
+    }
+
+    /**
+     * @param epochMillis Epoch time
+     * @return Midnight of the first day of the week
+     */
+    public static long weekStart(long epochMillis) {
+        return toUtc(weekStartDay(epochMillis) * MILLIS_PER_DAY);
+    }
+
+    /**
+     * @param epochMillis Epoch time
+     * @return Last minute of the last day of the week, 23:59
+     */
+    public static long weekEnd(long epochMillis) {
+        return toUtc((weekStartDay(epochMillis) + 7) * MILLIS_PER_DAY - MILLIS_PER_MINUTE);
+    }
+
+    /**
+     * @param epochMillis Epoch time
+     * @param weeks       Number of weeks to add, negative to go back
+     * @return Same wall time, the given number of weeks later
+     */
+    public static long addWeeks(long epochMillis, int weeks) {
+        return addMillis(epochMillis, weeks * MILLIS_PER_WEEK);
+    }
+
+    /**
+     * @param epochMillis Epoch time
+     * @param days        Number of days to add, negative to go back
+     * @return Same wall time, the given number of days later
+     */
+    public static long addDays(long epochMillis, int days) {
+        return addMillis(epochMillis, days * MILLIS_PER_DAY);
+    }
+
+    /**
+     * Adds a whole number of days, corrected by the change of offset, as Calendar.add does: the offset of the given
+     * time is kept when the result is ambiguous, and the result is moved back when it falls in a daylight saving
+     * gap, unless that would change its day.
+     */
+    private static long addMillis(long epochMillis, long millis) {
+        TimeZone timeZone = sTimeZone;
+        long shifted = epochMillis + millis;
+        long adjusted = shifted + timeZone.getOffset(epochMillis) - timeZone.getOffset(shifted);
+        if (localDay(adjusted) == localDay(epochMillis) + millis / MILLIS_PER_DAY)
+            return adjusted;
+        return toUtc(toLocal(epochMillis) + millis);
+    }
+
+    /**
+     * Number of days since 1970-01-01 of the local date
+     */
+    private static long localDay(long epochMillis) {
+        return Math.floorDiv(toLocal(epochMillis), MILLIS_PER_DAY);
+    }
+
+    /**
+     * Local day of the first day of the week
+     */
+    private static long weekStartDay(long epochMillis) {
+        long day = localDay(epochMillis);
+        int dayOfWeek = (int) Math.floorMod(day + EPOCH_DAY_OF_WEEK - Calendar.SUNDAY, 7) + Calendar.SUNDAY;
+        return day - Math.floorMod(dayOfWeek - sFirstDayOfWeek, 7);
+    }
+
+    /**
+     * First instant with the offset of to, after from, which has a different offset.
+     * Only called within an hour cut by a transition, which holds a single one.
+     */
+    private static long transition(long from, long to) {
+        TimeZone timeZone = sTimeZone;
+        int offset = timeZone.getOffset(to);
+        while (to - from > 1) {
+            long middle = from + (to - from) / 2;
+            if (timeZone.getOffset(middle) == offset)
+                to = middle;
+            else
+                from = middle;
+        }
+        return to;
+    }
+
+    private static long toLocal(long epochMillis) {
+        return epochMillis + sTimeZone.getOffset(epochMillis);
+    }
+
+    /**
+     * Converts a local time back to an epoch time. Local times skipped by a daylight saving transition are moved
+     * forward by the transition, as Calendar does.
+     */
+    private static long toUtc(long localMillis) {
+        TimeZone timeZone = sTimeZone;
+        long before = localMillis - timeZone.getOffset(localMillis - MILLIS_PER_DAY);
+        long after = localMillis - timeZone.getOffset(localMillis + MILLIS_PER_DAY);
+        if (before == after)
+            return before;
+        // Around a transition, use the offset that maps back to the same local time, or the earlier offset in a gap
+        if (toLocal(after) == localMillis)
+            return after;
+        return before;
+    }
+}
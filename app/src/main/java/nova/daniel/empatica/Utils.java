@@ -2,12 +2,10 @@ package nova.daniel.empatica;
 
 import android.content.Context;
 
-import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -106,13 +104,7 @@ public class Utils {
      * @return Date with minute, second, and millisecond set to 0.
      */
     public static Date removeMinutesSecondsAndMillis(Date date){
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MILLISECOND, 0);
-
-        return cal.getTime();
+        return new Date(TimeBuckets.hourStart(date.getTime()));
     }
 
     /**
@@ -123,20 +115,11 @@ public class Utils {
      * @return new Date with the given hour
      */
     public static Date setHourDate(Date date, int hour) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        cal.set(Calendar.HOUR_OF_DAY, hour);
-
-        return removeMinutesSecondsAndMillis(cal.getTime());
+        return new Date(TimeBuckets.atHour(date.getTime(), hour));
     }
 
     public static Date getHourEnd(Date date) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        cal.set(Calendar.MINUTE, 59);
-        cal.set(Calendar.SECOND, 59);
-
-        return cal.getTime();
+        return new Date(TimeBuckets.hourEnd(date.getTime()));
     }
 
     /**
@@ -146,11 +129,7 @@ public class Utils {
      * @return start of the week of the given date
      */
     public static Date getStartOfWeek(Date date) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        cal.set(Calendar.DAY_OF_WEEK, cal.getFirstDayOfWeek());
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        return removeMinutesSecondsAndMillis(cal.getTime());
+        return new Date(TimeBuckets.weekStart(date.getTime()));
     }
 
     /**
@@ -160,14 +139,21 @@ public class Utils {
      * @return end of the week of the given date
      */
     public static Date getEndOfWeek(Date date) {
-        Calendar cal = Calendar.getInstance();
-        Date startdate = getStartOfWeek(date);
-        cal.setTime(startdate);
-        cal.add(Calendar.DAY_OF_YEAR, 6);
-        cal.set(Calendar.HOUR_OF_DAY, 23);
-        cal.set(Calendar.MINUTE, 59);
-
-        return cal.getTime();
+        return new Date(TimeBuckets.weekEnd(date.getTime()));
+    }
+
+    /**
+     * Returns the midnight of every day of the week for a given date, starting from the first day of the week.
+     *
+     * @param date date
+     * @return List with the 7 days of the week of the given date
+     */
+    public static List<Date> getDaysOfWeek(Date date) {
+        List<Date> days = new ArrayList<>(7);
+        long weekStart = TimeBuckets.weekStart(date.getTime());
+        for (int i = 0; i < 7; i++)
+            days.add(new Date(TimeBuckets.addDays(weekStart, i)));
+        return days;
     }
 
     /**
@@ -177,10 +163,7 @@ public class Utils {
      * @return Midnight of the given date
      */
     public static Date getDayStart(Date date) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        return removeMinutesSecondsAndMillis(cal.getTime());
+        return new Date(TimeBuckets.dayStart(date.getTime()));
     }
 
     /**
@@ -190,12 +173,7 @@ public class Utils {
      * @return Last minute of the given date
      */
     public static Date getDayEnd(Date date) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        cal.set(Calendar.HOUR_OF_DAY, 23);
-        cal.set(Calendar.MINUTE, 59);
-
-        return cal.getTime();
+        return new Date(TimeBuckets.dayEnd(date.getTime()));
     }
 
     /**
@@ -205,10 +183,7 @@ public class Utils {
      * @return given date plus one week
      */
     public static Date advanceWeek(Date date) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        cal.add(Calendar.WEEK_OF_YEAR, 1);
-        return cal.getTime();
+        return new Date(TimeBuckets.addWeeks(date.getTime(), 1));
     }
 
     /**
@@ -219,28 +194,6 @@ public class Utils {
      * @return Date with numWeeks weeks behind the given date
      */
     public static Date goBackWeeks(Date date, int numWeeks) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        cal.add(Calendar.WEEK_OF_YEAR, -numWeeks);
-        return cal.getTime();
-    }
-
-    @SuppressWarnings("ConstantConditions")
-    // warning on possible null on candidates.get(key), which it's already guaranteed to exist in the loop
-    public static String getMaxScoreCandidate(Map<String, Double> candidates) {
-        String bestCandidate = ""; // ID of the best candidate
-        if (!candidates.isEmpty()) {
-            // Take first candidate as the best
-            Set<String> keys = candidates.keySet();
-            bestCandidate = keys.iterator().next();
-            double bestScore = candidates.get(bestCandidate);
-            for (String key : keys) {
-                if (candidates.get(key) > bestScore) {
-                    bestCandidate = key;
-                    bestScore = candidates.get(key);
-                }
-            }
-        }
-        return bestCandidate;
+        return new Date(TimeBuckets.addWeeks(date.getTime(), -numWeeks));
     }
 }
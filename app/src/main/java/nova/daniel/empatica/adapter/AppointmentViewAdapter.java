@@ -10,14 +10,17 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 
-import jp.wasabeef.glide.transformations.RoundedCornersTransformation;
 import nova.daniel.empatica.R;
 import nova.daniel.empatica.api.GlideApp;
+import nova.daniel.empatica.api.GlideRequests;
 import nova.daniel.empatica.model.Appointment;
 import nova.daniel.empatica.model.Caregiver;
 
@@ -26,11 +29,29 @@ import nova.daniel.empatica.model.Caregiver;
  * Displays information of the {@link Caregiver} associated with each appointment (name and picture) and the respective room.
  * The colour for each appointment slot depends on the selected room as specified in the @colors resource.
  * Setup in {@link HoursViewAdapter} for each hour slot, and rendered in {@link nova.daniel.empatica.ui.MainActivity}.
+ * <p>
+ * Appointments are submitted with submitList and diffed on a background thread. Appointments are identified by their
+ * ID, and only bound again if their room, date or displayed caregiver changed.
  */
-public class AppointmentViewAdapter extends RecyclerView.Adapter<AppointmentViewAdapter.AppointmentViewHolder> {
+public class AppointmentViewAdapter extends ListAdapter<Appointment, AppointmentViewAdapter.AppointmentViewHolder> {
+
+    // Single view type, used to size the pool shared by the rows of HoursViewAdapter
+    static final int VIEW_TYPE_APPOINTMENT = 0;
+
+    private static final DiffUtil.ItemCallback<Appointment> DIFF_CALLBACK = new DiffUtil.ItemCallback<Appointment>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Appointment oldItem, @NonNull Appointment newItem) {
+            return oldItem.appointmentId == newItem.appointmentId;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Appointment oldItem, @NonNull Appointment newItem) {
+            return haveSameContents(oldItem, newItem);
+        }
+    };
 
     private Context mContext;
-    private List<Appointment> mAppointmentsList;
+    private GlideRequests mGlide;
 
     /**
      * Interface listener for clicking on single appointment slots.
@@ -42,16 +63,55 @@ public class AppointmentViewAdapter extends RecyclerView.Adapter<AppointmentView
     private AppointmentViewAdapter.SlotClickListener mSlotListener;
 
     /**
-     * Constructor for the adapter.
+     * Constructor for the adapter. The list of appointments is set with submitList.
      *
      * @param context   Context.
-     * @param arrayList List of appointments.
      * @param listener  Listener for click events of appointment views.
      */
-    AppointmentViewAdapter(Context context, List<Appointment> arrayList, SlotClickListener listener) {
+    AppointmentViewAdapter(Context context, SlotClickListener listener) {
+        super(DIFF_CALLBACK);
         this.mContext = context;
-        this.mAppointmentsList = arrayList;
+        this.mGlide = GlideApp.with(context);
         this.mSlotListener = listener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Checks if two versions of an appointment are displayed the same way.
+     *
+     * @return True if the room, date and caregiver of both appointments are the same
+     */
+    static boolean haveSameContents(Appointment oldItem, Appointment newItem) {
+        if (oldItem.mRoom != newItem.mRoom
+                || !Objects.equals(oldItem.mDate, newItem.mDate)
+                || !Objects.equals(oldItem.mCaregiverId, newItem.mCaregiverId))
+            return false;
+
+        Caregiver oldCaregiver = oldItem.mCaregiver;
+        Caregiver newCaregiver = newItem.mCaregiver;
+        if (oldCaregiver == newCaregiver)
+            return true;
+        return oldCaregiver != null && newCaregiver != null
+                && Objects.equals(oldCaregiver.mFirstName, newCaregiver.mFirstName)
+                && Objects.equals(oldCaregiver.mLastName, newCaregiver.mLastName)
+                && Objects.equals(oldCaregiver.mPictureURL, newCaregiver.mPictureURL);
+    }
+
+    /**
+     * Checks if two lists of appointments are displayed the same way, see haveSameContents.
+     *
+     * @return True if both lists contain the same appointments, with the same contents, in the same order
+     */
+    static boolean haveSameContents(List<Appointment> oldList, List<Appointment> newList) {
+        if (oldList.size() != newList.size())
+            return false;
+        for (int i = 0; i < oldList.size(); i++) {
+            Appointment oldItem = oldList.get(i);
+            Appointment newItem = newList.get(i);
+            if (oldItem.appointmentId != newItem.appointmentId || !haveSameContents(oldItem, newItem))
+                return false;
+        }
+        return true;
     }
 
     @NonNull
@@ -63,20 +123,17 @@ public class AppointmentViewAdapter extends RecyclerView.Adapter<AppointmentView
 
     @Override
     public void onBindViewHolder(@NonNull AppointmentViewHolder holder, int position) {
-        holder.mPosition = position;
-        int roomNumber = mAppointmentsList.get(position).mRoom;
+        Appointment appointment = getItem(position);
+        int roomNumber = appointment.mRoom;
 
-        Caregiver caregiver = mAppointmentsList.get(position).mCaregiver;
+        Caregiver caregiver = appointment.mCaregiver;
 
         holder.mRoomTextView.setText(String.format(Locale.getDefault(), "%d", roomNumber));
         holder.mCarerTextView.setText(caregiver.getName());
 
         // Glide call to fetch and display the caregivers picture.
-        GlideApp.with(mContext)
-                .load(caregiver.mPictureURL)
-                .placeholder(R.drawable.ic_person_outline_white_24dp)
-                .centerCrop()
-                .transform(new RoundedCornersTransformation(45, 2))
+        mGlide.load(caregiver.mPictureURL)
+                .caregiverThumbnail()
                 .into(holder.mCarerImageView);
 
         //Setting the background color depending on the room number
@@ -87,11 +144,13 @@ public class AppointmentViewAdapter extends RecyclerView.Adapter<AppointmentView
     }
 
     @Override
-    public int getItemCount() {
-        if (mAppointmentsList == null)
-            return 0;
-        else
-            return mAppointmentsList.size();
+    public long getItemId(int position) {
+        return getItem(position).appointmentId;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return VIEW_TYPE_APPOINTMENT;
     }
 
     /**
@@ -99,7 +158,6 @@ public class AppointmentViewAdapter extends RecyclerView.Adapter<AppointmentView
      * Also consists of an image view to display the caregiver's picture.
      */
     class AppointmentViewHolder extends RecyclerView.ViewHolder {
-        private int mPosition;
         private View mContainer;  //Container view
         private TextView mRoomTextView;
         private TextView mCarerTextView;
@@ -113,9 +171,11 @@ public class AppointmentViewAdapter extends RecyclerView.Adapter<AppointmentView
             mContainer = view.findViewById(R.id.slotContainer_layout);
 
             // Set the container view to respond to clicks, send the appointment ID and its date
-            view.setOnClickListener(v -> mSlotListener.onSlotClick(
-                    mAppointmentsList.get(mPosition).appointmentId,
-                    mAppointmentsList.get(mPosition).mDate.getTime()));
+            view.setOnClickListener(v -> {
+                int position = getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION)
+                    mSlotListener.onSlotClick(getItem(position).appointmentId, getItem(position).mDate.getTime());
+            });
         }
     }
 }
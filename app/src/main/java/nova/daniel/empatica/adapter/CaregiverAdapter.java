@@ -8,99 +8,106 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.paging.PagedListAdapter;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.bumptech.glide.ListPreloader;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.util.ViewPreloadSizeProvider;
+
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
-import jp.wasabeef.glide.transformations.RoundedCornersTransformation;
 import nova.daniel.empatica.R;
 import nova.daniel.empatica.Utils;
 import nova.daniel.empatica.api.GlideApp;
+import nova.daniel.empatica.api.GlideRequests;
 import nova.daniel.empatica.model.Caregiver;
 
 /**
- * Adapter for the RecyclerView that displays a list of caregivers.
+ * Adapter for the RecyclerView that displays a paged list of caregivers.
  * Name and profile picture of a {@link Caregiver} are displayed in each view holder.
  * Pictures display and management is handled through the Glide image loading library.
  * When a view holder is clicked, the selected caregiver is sent to the caller through the
  * caregiverSelectedListener callback.
+ * <p>
+ * Caregivers are sorted by the database, and new pages are diffed off the main thread,
+ * caregivers are the same if they have the same uuid, and unchanged if they have the same content hash.
+ * <p>
+ * The adapter also provides the thumbnails to preload to a {@link com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader},
+ * with the same request and size as the bound ones, so preloaded thumbnails are served from the memory cache.
  *
  * <p/>
  * Rendered in the {@link nova.daniel.empatica.ui.CaregiversActivity} activity,
  * when the user selects a caregiver form a list.
  */
-@SuppressWarnings("unchecked")
-public class CaregiverAdapter extends RecyclerView.Adapter<CaregiverAdapter.ViewHolder> {
+public class CaregiverAdapter extends PagedListAdapter<Caregiver, CaregiverAdapter.ViewHolder>
+        implements ListPreloader.PreloadModelProvider<Caregiver> {
+
+    private static final DiffUtil.ItemCallback<Caregiver> DIFF_CALLBACK = new DiffUtil.ItemCallback<Caregiver>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Caregiver oldItem, @NonNull Caregiver newItem) {
+            return oldItem.uuid.equals(newItem.uuid);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Caregiver oldItem, @NonNull Caregiver newItem) {
+            return oldItem.mContentHash == newItem.mContentHash;
+        }
+    };
 
-    private List<Caregiver> caregiversList = Collections.emptyList();
-    private Context mContext;
-    private boolean mSort = false;
+    private GlideRequests mGlide;
+    private ViewPreloadSizeProvider<Caregiver> mPreloadSizeProvider = new ViewPreloadSizeProvider<>();
 
     private onItemClickListener caregiverSelectedListener;
 
     public CaregiverAdapter(Context context) {
-        mContext = context;
+        super(DIFF_CALLBACK);
+        mGlide = GlideApp.with(context);
         caregiverSelectedListener = (onItemClickListener) context;
     }
 
+    /**
+     * @return Size provider of the preloaded thumbnails, the size of the thumbnail of the first created row
+     */
+    public ViewPreloadSizeProvider<Caregiver> getPreloadSizeProvider() {
+        return mPreloadSizeProvider;
+    }
+
     @NonNull
     @Override
     public CaregiverAdapter.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.caregiver_row,parent,false);
-        return new ViewHolder(view);
+        ViewHolder holder = new ViewHolder(view);
+        mPreloadSizeProvider.setView(holder.imageView);
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull CaregiverAdapter.ViewHolder holder, int position) {
-        String name = caregiversList.get(position).mFirstName;
-        String lastName = caregiversList.get(position).mLastName;
+        Caregiver caregiver = getItem(position);
+        if (caregiver == null)
+            return; // Placeholders are disabled, never null
 
-        holder.mPosition = position;
         // All names are saved in lower case, capitalize them
-        holder.firstNameTextView.setText(Utils.capitalizeString(name));
-        holder.lastNameTextView.setText(Utils.capitalizeString(lastName));
+        holder.firstNameTextView.setText(Utils.capitalizeString(caregiver.mFirstName));
+        holder.lastNameTextView.setText(Utils.capitalizeString(caregiver.mLastName));
 
         // Glide API call to fetch the caregiver's picture
-        String picUrl = caregiversList.get(position).mPictureURL;
-        GlideApp.with(mContext)
-                .load(picUrl)
-                .placeholder(R.drawable.ic_person_outline_white_24dp)
-                .centerCrop()
-                .transform(new RoundedCornersTransformation(45, 2))
-                .into(holder.imageView);
+        getPreloadRequestBuilder(caregiver).into(holder.imageView);
     }
 
+    @NonNull
     @Override
-    public int getItemCount() {
-        return caregiversList.size();
-    }
-
-    /**
-     * Toggles if the list of caregivers is to be sorted.
-     */
-    public void doSort() {
-        this.mSort = !mSort;
-        setCaregiversList(this.caregiversList);
+    public List<Caregiver> getPreloadItems(int position) {
+        Caregiver caregiver = position < getItemCount() ? getItem(position) : null;
+        return caregiver == null ? Collections.emptyList() : Collections.singletonList(caregiver);
     }
 
-    /**
-     * Sort the list of caregivers alphabetically by last names.
-     * Overwrites the existing caregivers list and triggers the data set notification.
-     *
-     * @param caregiversList List of caregivers.
-     */
-    public void setCaregiversList(List<Caregiver> caregiversList) {
-        if(mSort) {
-            Collections.sort(caregiversList, (Comparator) (o1, o2) -> {
-                Caregiver p1 = (Caregiver) o1;
-                Caregiver p2 = (Caregiver) o2;
-                return p1.mLastName.compareToIgnoreCase(p2.mLastName);
-            });
-        }
-        this.caregiversList = caregiversList;
-        notifyDataSetChanged();
+    @Override
+    public RequestBuilder<?> getPreloadRequestBuilder(@NonNull Caregiver caregiver) {
+        return mGlide.load(caregiver.mPictureURL).caregiverThumbnail();
     }
 
     /**
@@ -110,7 +117,6 @@ public class CaregiverAdapter extends RecyclerView.Adapter<CaregiverAdapter.View
      * Each view has an onclick listener, used as a callback for the selected caregiver.
      */
     class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener{
-        int mPosition;
         TextView firstNameTextView;
         TextView lastNameTextView;
         ImageView imageView;
@@ -131,8 +137,9 @@ public class CaregiverAdapter extends RecyclerView.Adapter<CaregiverAdapter.View
          */
         @Override
         public void onClick(View v) {
-            if(caregiverSelectedListener != null){
-                caregiverSelectedListener.onCaregiverClick(caregiversList.get(mPosition), mPosition);
+            int position = getAdapterPosition();
+            if(caregiverSelectedListener != null && position != RecyclerView.NO_POSITION){
+                caregiverSelectedListener.onCaregiverClick(getItem(position), position);
             }
         }
     }
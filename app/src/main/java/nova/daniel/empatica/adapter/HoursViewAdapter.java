@@ -7,7 +7,9 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.List;
@@ -22,14 +24,38 @@ import nova.daniel.empatica.model.HourSlotModel;
  * slots per day.
  * It contains the elements of {@link HourSlotModel} which specify the appointments for each hour
  * of the day
- * While mAppointmentAdapter ({@link AppointmentViewAdapter} is the adapter for the appointments
- * for each hour of the day.
+ * While each row has its own {@link AppointmentViewAdapter}, the adapter for the appointments
+ * of that hour of the day.
+ * <p>
+ * New models are submitted with submitList, and diffed against the current one on a background thread.
+ * Hours are identified by their hour of the day, so only the rows whose appointments changed are bound again,
+ * and within them only the changed appointments.
+ * <p>
+ * The RecyclerViews of all rows share a single pool of appointment views, and give their views back to it when
+ * a row is recycled, so scrolling the day reuses the same appointment views instead of inflating new ones.
  */
-public class HoursViewAdapter extends RecyclerView.Adapter<HoursViewAdapter.HourViewHolder> {
+public class HoursViewAdapter extends ListAdapter<HourSlotModel, HoursViewAdapter.HourViewHolder> {
+
+    // Rows whose appointment views are kept in the shared pool, when all rooms are booked
+    private static final int POOLED_ROWS = 4;
+    // Appointment views laid out ahead when a row is about to scroll into the screen
+    private static final int INITIAL_PREFETCH_ITEMS = 4;
+
+    private static final DiffUtil.ItemCallback<HourSlotModel> DIFF_CALLBACK = new DiffUtil.ItemCallback<HourSlotModel>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull HourSlotModel oldItem, @NonNull HourSlotModel newItem) {
+            return oldItem.getHour() == newItem.getHour();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull HourSlotModel oldItem, @NonNull HourSlotModel newItem) {
+            return oldItem.getHourLabel().equals(newItem.getHourLabel())
+                    && AppointmentViewAdapter.haveSameContents(oldItem.getItemArrayList(), newItem.getItemArrayList());
+        }
+    };
 
     private Context mContext;
-    private List<HourSlotModel> mHourSlotModelList;
-    private AppointmentViewAdapter mAppointmentAdapter;
+    private final RecyclerView.RecycledViewPool mAppointmentViewPool = new RecyclerView.RecycledViewPool();
 
     /**
      * Interface to respond to clicks to add/edit slots
@@ -43,18 +69,22 @@ public class HoursViewAdapter extends RecyclerView.Adapter<HoursViewAdapter.Hour
 
     /**
      * Constructor of the hours view adapter.
+     * The list of {@link HourSlotModel}, containing the appointments per hour for a specific date, is set with submitList.
      *
      * @param mContext               Context
-     * @param hourSlotModelList      List of {@link HourSlotModel} containing the appointments per hour for a specific date.
      * @param newAppointmentListener Listener for creating new appointments.
      * @param appointmentListener    Listener for responding to existing appointment selection.
      */
-    public HoursViewAdapter(Context mContext, List<HourSlotModel> hourSlotModelList,
+    public HoursViewAdapter(Context mContext,
                             NewAppointmentClickListener newAppointmentListener, AppointmentViewAdapter.SlotClickListener appointmentListener) {
+        super(DIFF_CALLBACK);
         this.mContext = mContext;
-        this.mHourSlotModelList = hourSlotModelList;
         this.mNewSlotListener = newAppointmentListener;  // new appointment newAppointmentListener
         this.mSlotClickListener = appointmentListener;  // edit appointment newAppointmentListener
+        setHasStableIds(true);
+
+        int numRooms = mContext.getResources().getInteger(R.integer.num_rooms);
+        mAppointmentViewPool.setMaxRecycledViews(AppointmentViewAdapter.VIEW_TYPE_APPOINTMENT, numRooms * POOLED_ROWS);
     }
 
     @NonNull
@@ -66,44 +96,30 @@ public class HoursViewAdapter extends RecyclerView.Adapter<HoursViewAdapter.Hour
 
     @Override
     public void onBindViewHolder(@NonNull HourViewHolder holder, int position) {
-        final HourSlotModel hourSlotModel = mHourSlotModelList.get(position);
+        final HourSlotModel hourSlotModel = getItem(position);
         holder.mHourLabel.setText(hourSlotModel.getHourLabel());  // set each hour label
 
-        // Setup the adapter for the appointments for each HourView row
-        holder.mRecyclerView.setNestedScrollingEnabled(false);
-
-        LinearLayoutManager linearLayoutManager = new LinearLayoutManager(mContext, LinearLayoutManager.HORIZONTAL, false);
-        holder.mRecyclerView.setLayoutManager(linearLayoutManager);
-
-        mAppointmentAdapter = new AppointmentViewAdapter(mContext, hourSlotModel.getItemArrayList(), mSlotClickListener);
-        holder.mRecyclerView.setAdapter(mAppointmentAdapter);
+        // The appointments are diffed against the ones previously shown in this row
+        holder.mAppointmentAdapter.submitList(hourSlotModel.getItemArrayList());
     }
 
     @Override
-    public int getItemCount() {
-        return mHourSlotModelList.size();
-    }
-
-    /**
-     * Notifies the adapters that the HourSlotModels have changed.
-     *
-     * @param model New model
-     */
-    public void notifyModelChanged(List<HourSlotModel> model){
-        this.mHourSlotModelList = model;
-        notifyDataSetChanged();
-        mAppointmentAdapter.notifyDataSetChanged();
+    public long getItemId(int position) {
+        return getItem(position).getHour();
     }
 
     /**
      * The ViewHolder for each view consists of the hour label mHourLabel,
      * a view used for adding new appointments mAddSlotButton,
      * and finally, a RecyclerView containing the list of appointments for the given hour slot.
+     * The layout manager and adapter of the RecyclerView are created once per ViewHolder, and its views come from
+     * the shared pool of appointment views.
      */
     class HourViewHolder extends RecyclerView.ViewHolder {
         private TextView mHourLabel;
         private TextView mAddSlotButton;
         private RecyclerView mRecyclerView;
+        private AppointmentViewAdapter mAppointmentAdapter;
 
         HourViewHolder(View view) {
             super(view);
@@ -111,6 +127,17 @@ public class HoursViewAdapter extends RecyclerView.Adapter<HoursViewAdapter.Hour
             mAddSlotButton = view.findViewById(R.id.addSlot_button);
             mRecyclerView = view.findViewById(R.id.hour_recyclerView);
 
+            // Setup the adapter for the appointments of this HourView row
+            mRecyclerView.setNestedScrollingEnabled(false);
+            mRecyclerView.setRecycledViewPool(mAppointmentViewPool);
+
+            LinearLayoutManager layoutManager = new LinearLayoutManager(mContext, LinearLayoutManager.HORIZONTAL, false);
+            layoutManager.setInitialPrefetchItemCount(INITIAL_PREFETCH_ITEMS);
+            layoutManager.setRecycleChildrenOnDetach(true); // return the views to the shared pool
+            mRecyclerView.setLayoutManager(layoutManager);
+            mAppointmentAdapter = new AppointmentViewAdapter(mContext, mSlotClickListener);
+            mRecyclerView.setAdapter(mAppointmentAdapter);
+
             // Empty spaces in the recycler view can be clicked to add new appointments.
             View emptyRecyclerView = view.findViewById(R.id.recycler_view_container);
             emptyRecyclerView.setOnClickListener(v -> onViewClick());
@@ -119,11 +146,12 @@ public class HoursViewAdapter extends RecyclerView.Adapter<HoursViewAdapter.Hour
         }
 
         void onViewClick(){
-            int _hour = Integer.valueOf(mHourLabel.getText().toString().split(":")[0]);
-            mNewSlotListener.onNewSlotClick(_hour);
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION)
+                mNewSlotListener.onNewSlotClick(getItem(position).getHour());
         }
 
     }
 
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package nova.daniel.empatica.api;
+
+/**
+ * Spaces downloads so they average at most a number of bytes per second, see {@link ThumbnailPrefetcher}.
+ * <p>
+ * The size of a download is only known once it is done, so each download first reserves its estimated size,
+ * which moves the start of the next download later in the same step, and once done reconciles the
+ * reservation with its actual size. Concurrent downloads can then never start together on the same budget.
+ * The estimate is a running average of the downloaded sizes.
+ * <p>
+ * Times are in milliseconds of a monotonic clock given by the caller.
+ */
+class BandwidthBudget {
+
+    // The estimate moves by 1 / AVERAGE_WEIGHT of the difference with each downloaded size
+    private static final int AVERAGE_WEIGHT = 8;
+
+    private final long mBytesPerSecond;
+    private long mEstimatedBytes;
+    // Earliest time the next download can start
+    private long mNextStart = Long.MIN_VALUE;
+
+    /**
+     * @param bytesPerSecond Average bandwidth allowed
+     * @param estimatedBytes Estimated size of a download, until downloads are done
+     */
+    BandwidthBudget(long bytesPerSecond, long estimatedBytes) {
+        mBytesPerSecond = bytesPerSecond;
+        mEstimatedBytes = estimatedBytes;
+    }
+
+    /**
+     * @return Estimated size of the next download, to reserve
+     */
+    synchronized long getEstimatedBytes() {
+        return mEstimatedBytes;
+    }
+
+    /**
+     * Reserves the given number of bytes after the downloads already reserved.
+     *
+     * @param bytes Estimated size of the download
+     * @param now   Current time
+     * @return Time to wait before starting the download, 0 to start now
+     */
+    synchronized long reserve(long bytes, long now) {
+        long start = Math.max(now, mNextStart);
+        mNextStart = start + duration(bytes);
+        return start - now;
+    }
+
+    /**
+     * Corrects a reservation with the actual size of the download, moving the next start later if the download
+     * was larger than reserved, or earlier if it was smaller. Failed downloads are not reconciled, and keep
+     * their reservation.
+     *
+     * @param reservedBytes Bytes reserved for the download
+     * @param actualBytes   Bytes downloaded
+     */
+    synchronized void reconcile(long reservedBytes, long actualBytes) {
+        mNextStart += duration(actualBytes) - duration(reservedBytes);
+        mEstimatedBytes += (actualBytes - mEstimatedBytes) / AVERAGE_WEIGHT;
+    }
+
+    private long duration(long bytes) {
+        return bytes * 1000 / mBytesPerSecond;
+    }
+}
@@ -0,0 +1,122 @@
+package nova.daniel.empatica.api;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import nova.daniel.empatica.model.Caregiver;
+
+/**
+ * Streaming parser for the results of the randomuser.me API.
+ * <p>
+ * Reads the response with Gson's {@link JsonReader}, building {@link Caregiver} objects directly and skipping
+ * every field that is not used: only name.first, name.last, picture.thumbnail and login.uuid are read.
+ * No intermediate JSON tree is built.
+ * <p>
+ * The uuid is the primary key of the caregivers, so results without a login.uuid are skipped, instead of
+ * being saved over each other with the default uuid of {@link Caregiver}.
+ */
+public class CaregiverJsonParser {
+
+    private CaregiverJsonParser() {
+    }
+
+    /**
+     * Parses a full API response.
+     *
+     * @param in Reader of the response body
+     * @return Caregivers in the "results" array with a uuid, in the same order
+     * @throws IOException If the response cannot be read or is not valid JSON
+     */
+    public static List<Caregiver> parse(Reader in) throws IOException {
+        List<Caregiver> caregivers = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("results")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Caregiver caregiver = readCaregiver(reader);
+                        if (caregiver != null)
+                            caregivers.add(caregiver);
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return caregivers;
+    }
+
+    /**
+     * Reads a single result.
+     *
+     * @return Caregiver, or null if the result has no uuid
+     */
+    private static Caregiver readCaregiver(JsonReader reader) throws IOException {
+        Caregiver caregiver = new Caregiver();
+        String uuid = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String field = reader.nextName();
+                        if (field.equals("first"))
+                            caregiver.mFirstName = readString(reader);
+                        else if (field.equals("last"))
+                            caregiver.mLastName = readString(reader);
+                        else
+                            reader.skipValue();
+                    }
+                    reader.endObject();
+                    break;
+                case "picture":
+                    caregiver.mPictureURL = readField(reader, "thumbnail");
+                    break;
+                case "login":
+                    uuid = readField(reader, "uuid");
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (uuid == null || uuid.isEmpty())
+            return null;
+        caregiver.uuid = uuid;
+        return caregiver;
+    }
+
+    /**
+     * Reads a single string field of an object, skipping the rest of the object.
+     */
+    private static String readField(JsonReader reader, String name) throws IOException {
+        String value = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(name))
+                value = readString(reader);
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+        return value;
+    }
+
+    private static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
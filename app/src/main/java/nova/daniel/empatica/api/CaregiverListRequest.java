@@ -0,0 +1,85 @@
+package nova.daniel.empatica.api;
+
+import com.android.volley.Cache;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import nova.daniel.empatica.model.Caregiver;
+
+/**
+ * Volley request that parses a page of the randomuser.me API straight from the response bytes into
+ * {@link Caregiver} objects, using {@link CaregiverJsonParser}.
+ * Parsing runs on Volley's network thread, only the resulting list is delivered to the main thread.
+ * <p>
+ * Caching follows the server caching headers, Cache-Control and Expires, including no-store and max-age=0.
+ * When the server sends none, the response is fresh for the staleness window of the sync, sync_stale_minutes,
+ * and then served stale while it is revalidated, for up to STALE_WINDOW_MS more. Revalidation uses the ETag or
+ * Last-Modified date of the cached entry, and a 304 response is served from the cache.
+ * Volley delivers a stale response and then its refreshed version, so the listener can be called twice.
+ */
+public class CaregiverListRequest extends Request<List<Caregiver>> {
+
+    private static final long STALE_WINDOW_MS = 24 * 60 * 60 * 1000L;
+
+    private final Response.Listener<List<Caregiver>> mListener;
+    private final long mFreshMs;
+
+    /**
+     * @param url           URL of the page
+     * @param freshMs       Time the response is fresh when the server sends no caching headers
+     * @param listener      Listener for the parsed caregivers
+     * @param errorListener Listener for errors
+     */
+    CaregiverListRequest(String url, long freshMs, Response.Listener<List<Caregiver>> listener,
+                         Response.ErrorListener errorListener) {
+        super(Method.GET, url, errorListener);
+        mFreshMs = freshMs;
+        mListener = listener;
+    }
+
+    @Override
+    protected Response<List<Caregiver>> parseNetworkResponse(NetworkResponse response) {
+        String charset = HttpHeaderParser.parseCharset(response.headers, "UTF-8");
+        try (InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(response.data), charset)) {
+            return Response.success(CaregiverJsonParser.parse(reader), parseCacheEntry(response));
+        } catch (IOException | RuntimeException e) {
+            return Response.error(new ParseError(e));
+        }
+    }
+
+    /**
+     * Builds the cache entry of a response, following the server caching headers when present,
+     * or falling back to mFreshMs and STALE_WINDOW_MS otherwise.
+     *
+     * @param response Network response
+     * @return Cache entry for the response, null if the server asked not to cache it
+     */
+    private Cache.Entry parseCacheEntry(NetworkResponse response) {
+        Cache.Entry entry = HttpHeaderParser.parseCacheHeaders(response);
+        if (entry == null || hasCacheHeaders(response))
+            return entry;
+
+        long now = System.currentTimeMillis();
+        entry.softTtl = now + mFreshMs;
+        entry.ttl = entry.softTtl + STALE_WINDOW_MS;
+        return entry;
+    }
+
+    private static boolean hasCacheHeaders(NetworkResponse response) {
+        return response.headers != null
+                && (response.headers.get("Cache-Control") != null || response.headers.get("Expires") != null);
+    }
+
+    @Override
+    protected void deliverResponse(List<Caregiver> response) {
+        mListener.onResponse(response);
+    }
+}
@@ -2,12 +2,19 @@ package nova.daniel.empatica.api;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.os.AsyncTask;
 
-import com.android.volley.Request;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.volley.Cache;
 import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.HurlStack;
+
+import java.io.File;
 
+import nova.daniel.empatica.R;
 import nova.daniel.empatica.persistence.CaregiverRepository;
 
 /**
@@ -19,13 +26,38 @@ public class CaregiversApi {
 
     private static CaregiversApi instance = null;
     private static Context mContext;
+    private static RequestQueue sRequestQueue; // Shared by all requests, created with the instance
+    private static long sFreshMs; // Time responses without caching headers are fresh, the sync staleness window
+
+    private final static String CACHE_DIR = "caregivers_api";
 
-    private final static String API_URL = "https://randomuser.me/api/?seed=empatica";
+    private final static String DEFAULT_API_URL = "https://randomuser.me/api/?seed=empatica";
+    private static String sApiUrl = DEFAULT_API_URL;
     private final static String PAGE_PARAM = "page=";
     private final static String RESULTS_PARAM = "results=";
 
     private CaregiversApi(Context context) {
         mContext = context;
+        sRequestQueue = createRequestQueue(context.getApplicationContext());
+        sFreshMs = context.getResources().getInteger(R.integer.sync_stale_minutes) * 60 * 1000L;
+    }
+
+    /**
+     * Creates the long-lived request queue used for all API calls.
+     * The number of network threads and the size of the disk cache are set in the integers resource file,
+     * under api_network_threads and api_cache_size_kb.
+     *
+     * @param context Application context
+     * @return Started request queue
+     */
+    private static RequestQueue createRequestQueue(Context context) {
+        int threads = context.getResources().getInteger(R.integer.api_network_threads);
+        int cacheSize = context.getResources().getInteger(R.integer.api_cache_size_kb) * 1024;
+
+        Cache cache = new DiskBasedCache(new File(context.getCacheDir(), CACHE_DIR), cacheSize);
+        RequestQueue queue = new RequestQueue(cache, new BasicNetwork(new HurlStack()), threads);
+        queue.start();
+        return queue;
     }
 
     public static synchronized void getInstance(Context context) {
@@ -36,6 +68,17 @@ public class CaregiversApi {
         }
     }
 
+    /**
+     * Overrides the API URL, for example to point to a local server that stands in for randomuser.me.
+     * The URL must already contain a query string, as the page and results parameters are appended with '&'.
+     *
+     * @param apiUrl New API URL, or null to restore the default one
+     */
+    @VisibleForTesting
+    public static void setApiUrl(String apiUrl) {
+        sApiUrl = apiUrl == null ? DEFAULT_API_URL : apiUrl;
+    }
+
     /**
      * Concatenates the API_URL and page and results parameters into a single URL.
      * For example, for a value page=3, results=5, the resulting url is:
@@ -46,28 +89,40 @@ public class CaregiversApi {
      * @return Complete URL
      */
     private static String buildURL(int page, int results){
-        return API_URL + "&" + PAGE_PARAM + page + "&" + RESULTS_PARAM + results;
+        return sApiUrl + "&" + PAGE_PARAM + page + "&" + RESULTS_PARAM + results;
     }
 
     /**
-     * Sends a JsonObjectRequest to fetch the caregivers list from API_URL and sends result to the given callback listener.
+     * Sends a {@link CaregiverListRequest} to fetch the caregivers list from API_URL and sends result to the given callback listener.
+     * The response is parsed as a stream on the network thread, see {@link CaregiverJsonParser}.
+     * Requests go through the shared request queue, so repeated pages are served from its disk cache or
+     * revalidated with the server, see {@link CaregiverListRequest}.
+     * A refresh expires the cached page first, off the main thread, so it is always revalidated with the server
+     * and a 304 response is still served from the cache.
      *
      * @param page             Page number to fetch.
+     * @param results          Results to fetch.
+     * @param refresh          True to bypass a cached page that is still fresh.
      * @param callbackListener Result listener.
      */
-    public static void fetchCaregivers(int page, int results, CaregiverRepository.APICallbackListener callbackListener) {
-        RequestQueue queue = Volley.newRequestQueue(mContext);
-
+    public static void fetchCaregivers(int page, int results, boolean refresh,
+                                       CaregiverRepository.APICallbackListener callbackListener) {
         // Build complete URL, the default number of results is set in api_results in the integer resources.
         String url = buildURL(page, results);
 
-        // Build json request
-        JsonObjectRequest caregiverJsonRequest = new JsonObjectRequest
-                (Request.Method.GET, url, null,
-                        callbackListener::resultCallback,
-                        error -> callbackListener.resultError());
+        // Build caregivers request
+        CaregiverListRequest caregiverJsonRequest = new CaregiverListRequest(url, sFreshMs,
+                callbackListener::resultCallback,
+                error -> callbackListener.resultError());
 
         // Queue request
-        queue.add(caregiverJsonRequest);
+        if (refresh) {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+                sRequestQueue.getCache().invalidate(caregiverJsonRequest.getCacheKey(), true);
+                sRequestQueue.add(caregiverJsonRequest);
+            });
+        } else {
+            sRequestQueue.add(caregiverJsonRequest);
+        }
     }
 }
@@ -0,0 +1,254 @@
+package nova.daniel.empatica.api;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import nova.daniel.empatica.model.Caregiver;
+import nova.daniel.empatica.persistence.CaregiverRepository;
+
+/**
+ * Fetches several pages of caregivers from {@link CaregiversApi} concurrently.
+ * Either the first numPages pages or a given set of page numbers are fetched.
+ * <p>
+ * At most maxConcurrent requests are in flight at any time, as soon as one page arrives the next one is requested.
+ * A failed page is retried on its own, up to maxRetries times, without affecting the other pages.
+ * Retries wait with an exponential backoff and a random jitter, so a throttling server is not hit again right
+ * away, and the page keeps its slot while it waits, so no other request is sent in its place.
+ * Once every page has either arrived or run out of retries, the caregivers are merged in page order and
+ * delivered to the listener. Each page is also delivered on its own as soon as it arrives.
+ * A page served stale from the cache can arrive again once refreshed. The refreshed page is delivered on its own
+ * again, and errors after a page arrived are ignored.
+ * <p>
+ * Volley delivers the responses on the main thread, so the state of the fetcher is only accessed from there.
+ * Pages are requested through a {@link PageSource}, {@link CaregiversApi} by default, and retries are scheduled
+ * on the main thread, so tests can run the fetcher against a local server.
+ */
+public class PagedCaregiverFetcher {
+
+    // Delay before the first retry of a page, doubled for each following retry up to BACKOFF_MAX_FACTOR times
+    private static final long BACKOFF_BASE_MS = 500;
+    private static final int BACKOFF_MAX_FACTOR = 16;
+
+    private final int[] mPageNumbers; // Page number of each position, 1-based
+    private final int mNumPages;
+    private final int mResultsPerPage;
+    private final int mMaxConcurrent;
+    private final int mMaxRetries;
+    private final PagesListener mListener;
+    private final PageSource mSource;
+    private final Scheduler mScheduler;
+    private final long mBackoffBaseMs;
+    private final Random mRandom = new Random();
+
+    private final List<List<Caregiver>> mPages; // Results of each page, null while not fetched
+    private final int[] mAttempts;
+    private int mNextPage = 0;  // Position of the next page to request
+    private int mInFlight = 0;
+    private int mFinished = 0;  // Pages that arrived or ran out of retries
+    private boolean mAllSucceeded = true;
+
+    /**
+     * @param numPages       Number of pages to fetch, starting from page 1
+     * @param resultsPerPage Number of results of each page
+     * @param maxConcurrent  Maximum number of requests in flight
+     * @param maxRetries     Maximum number of retries for each failed page
+     * @param refresh        True to bypass cached pages that are still fresh
+     * @param listener       Listener for the merged results
+     */
+    public PagedCaregiverFetcher(int numPages, int resultsPerPage, int maxConcurrent, int maxRetries,
+                                 boolean refresh, PagesListener listener) {
+        this(firstPages(numPages), resultsPerPage, maxConcurrent, maxRetries, refresh, listener);
+    }
+
+    /**
+     * @param pageNumbers    Page numbers to fetch, 1-based, results are merged in this order
+     * @param resultsPerPage Number of results of each page
+     * @param maxConcurrent  Maximum number of requests in flight
+     * @param maxRetries     Maximum number of retries for each failed page
+     * @param refresh        True to bypass cached pages that are still fresh
+     * @param listener       Listener for the merged results
+     */
+    public PagedCaregiverFetcher(int[] pageNumbers, int resultsPerPage, int maxConcurrent, int maxRetries,
+                                 boolean refresh, PagesListener listener) {
+        this(pageNumbers, resultsPerPage, maxConcurrent, maxRetries,
+                (page, results, pageListener) -> CaregiversApi.fetchCaregivers(page, results, refresh, pageListener),
+                listener);
+    }
+
+    /**
+     * @param pageNumbers    Page numbers to fetch, 1-based, results are merged in this order
+     * @param resultsPerPage Number of results of each page
+     * @param maxConcurrent  Maximum number of requests in flight
+     * @param maxRetries     Maximum number of retries for each failed page
+     * @param source         Source of the pages, must call back on the main thread
+     * @param listener       Listener for the merged results
+     */
+    public PagedCaregiverFetcher(int[] pageNumbers, int resultsPerPage, int maxConcurrent, int maxRetries,
+                                 PageSource source, PagesListener listener) {
+        this(pageNumbers, resultsPerPage, maxConcurrent, maxRetries, listener, source,
+                new Handler(Looper.getMainLooper())::postDelayed, BACKOFF_BASE_MS);
+    }
+
+    /**
+     * @param pageNumbers    Page numbers to fetch, 1-based, results are merged in this order
+     * @param resultsPerPage Number of results of each page
+     * @param maxConcurrent  Maximum number of requests in flight
+     * @param maxRetries     Maximum number of retries for each failed page
+     * @param listener       Listener for the merged results
+     * @param source         Source of the pages, must call back on the thread of the scheduler
+     * @param scheduler      Schedules the retries, on the thread the fetcher runs on
+     * @param backoffBaseMs  Delay before the first retry of a page
+     */
+    @VisibleForTesting
+    PagedCaregiverFetcher(int[] pageNumbers, int resultsPerPage, int maxConcurrent, int maxRetries,
+                          PagesListener listener, PageSource source, Scheduler scheduler, long backoffBaseMs) {
+        int numPages = pageNumbers.length;
+        mPageNumbers = pageNumbers;
+        mNumPages = numPages;
+        mResultsPerPage = resultsPerPage;
+        mMaxConcurrent = Math.max(1, maxConcurrent);
+        mMaxRetries = maxRetries;
+        mListener = listener;
+        mSource = source;
+        mScheduler = scheduler;
+        mBackoffBaseMs = backoffBaseMs;
+        mPages = new ArrayList<>(numPages);
+        for (int i = 0; i < numPages; i++)
+            mPages.add(null);
+        mAttempts = new int[numPages];
+    }
+
+    private static int[] firstPages(int numPages) {
+        int[] pages = new int[numPages];
+        for (int i = 0; i < numPages; i++)
+            pages[i] = i + 1;
+        return pages;
+    }
+
+    /**
+     * Starts fetching the pages. Must be called from the main thread.
+     */
+    public void start() {
+        if (mNumPages == 0) {
+            mListener.onPagesFetched(new ArrayList<>(), true);
+            return;
+        }
+        while (mInFlight < mMaxConcurrent && mNextPage < mNumPages)
+            request(mNextPage++);
+    }
+
+    private void request(int page) {
+        mInFlight++;
+        send(page);
+    }
+
+    /**
+     * Sends a request for the page, which already holds one of the maxConcurrent slots.
+     */
+    private void send(int page) {
+        mAttempts[page]++;
+        mSource.fetch(mPageNumbers[page], mResultsPerPage, new CaregiverRepository.APICallbackListener() {
+            @Override
+            public void resultCallback(List<Caregiver> caregivers) {
+                if (mPages.get(page) != null) { // Refreshed version of a stale page
+                    mPages.set(page, caregivers);
+                    mListener.onPageFetched(mPageNumbers[page], caregivers);
+                    return;
+                }
+                mInFlight--;
+                mPages.set(page, caregivers);
+                mListener.onPageFetched(mPageNumbers[page], caregivers);
+                onPageFinished();
+            }
+
+            @Override
+            public void resultError() {
+                if (mPages.get(page) != null) // The refresh of a stale page failed, the stale page is kept
+                    return;
+                if (mAttempts[page] <= mMaxRetries) {
+                    mScheduler.schedule(() -> send(page), backoffDelay(mAttempts[page]));
+                } else {
+                    mInFlight--;
+                    mAllSucceeded = false;
+                    onPageFinished();
+                }
+            }
+        });
+    }
+
+    /**
+     * Exponential backoff with jitter: the delay doubles with each failed attempt, up to BACKOFF_MAX_FACTOR times
+     * the base delay, and a random part of up to half of it is dropped, so pages do not retry in lockstep.
+     *
+     * @param failedAttempts Number of failed attempts of the page, from 1
+     * @return Delay before the next attempt, in milliseconds
+     */
+    private long backoffDelay(int failedAttempts) {
+        long delay = mBackoffBaseMs * Math.min(BACKOFF_MAX_FACTOR, 1L << Math.min(failedAttempts - 1, 30));
+        return delay - (long) (mRandom.nextDouble() * (delay / 2));
+    }
+
+    private void onPageFinished() {
+        mFinished++;
+        if (mFinished == mNumPages) {
+            List<Caregiver> caregivers = new ArrayList<>(mNumPages * mResultsPerPage);
+            for (List<Caregiver> page : mPages)
+                if (page != null)
+                    caregivers.addAll(page);
+            mListener.onPagesFetched(caregivers, mAllSucceeded);
+        } else if (mNextPage < mNumPages) {
+            request(mNextPage++);
+        }
+    }
+
+    /**
+     * Source of the pages of caregivers.
+     */
+    public interface PageSource {
+        /**
+         * Requests a page, and calls back the listener with its caregivers or an error.
+         *
+         * @param page     Page number, 1-based
+         * @param results  Number of results of the page
+         * @param listener Listener for the result of the request
+         */
+        void fetch(int page, int results, CaregiverRepository.APICallbackListener listener);
+    }
+
+    /**
+     * Schedules the retries of failed pages.
+     */
+    public interface Scheduler {
+        /**
+         * @param task    Task to run
+         * @param delayMs Delay before running the task, in milliseconds
+         */
+        void schedule(Runnable task, long delayMs);
+    }
+
+    /**
+     * Listener for the merged results of all pages.
+     */
+    public interface PagesListener {
+        /**
+         * Called for each page that arrives, before the merged results are delivered.
+         *
+         * @param page       Page number, 1-based
+         * @param caregivers Caregivers of the page
+         */
+        default void onPageFetched(int page, List<Caregiver> caregivers) {
+        }
+
+        /**
+         * @param caregivers   Caregivers of all fetched pages, in page order
+         * @param allSucceeded True if every page was fetched, false if at least one page failed after all retries
+         */
+        void onPagesFetched(List<Caregiver> caregivers, boolean allSucceeded);
+    }
+}
@@ -1,12 +1,48 @@
 package nova.daniel.empatica.api;
 
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.GlideBuilder;
 import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
 import com.bumptech.glide.module.AppGlideModule;
 
+import nova.daniel.empatica.R;
+
 /**
  * Required module to use the Glide image loading library.
  * See https://bumptech.github.io/glide/
+ * <p>
+ * Sets the cache budgets of the caregiver thumbnails:
+ * - Memory cache and bitmap pool sized in screens of images, so a fling back over the last screens is served
+ * from memory, and recycled bitmaps are reused when decoding.
+ * - Disk cache of glide_disk_cache_size_mb in the cache directory, holding the downloaded pictures and the
+ * transformed thumbnails, see {@link ThumbnailExtension}.
  */
 @GlideModule
 public final class PicsAppGlideModule extends AppGlideModule {
+
+    private static final float MEMORY_CACHE_SCREENS = 3;
+    private static final float BITMAP_POOL_SCREENS = 4;
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context)
+                .setMemoryCacheScreens(MEMORY_CACHE_SCREENS)
+                .setBitmapPoolScreens(BITMAP_POOL_SCREENS)
+                .build();
+        builder.setMemorySizeCalculator(calculator);
+
+        long diskCacheSize = context.getResources().getInteger(R.integer.glide_disk_cache_size_mb) * 1024L * 1024L;
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, "caregiver_thumbnails", diskCacheSize));
+    }
+
+    // No Glide modules are declared in the manifest, skip parsing it on startup
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
 }
@@ -0,0 +1,46 @@
+package nova.daniel.empatica.api;
+
+import android.graphics.Bitmap;
+
+import com.bumptech.glide.annotation.GlideExtension;
+import com.bumptech.glide.annotation.GlideOption;
+import com.bumptech.glide.load.MultiTransformation;
+import com.bumptech.glide.load.Transformation;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.bitmap.CenterCrop;
+import com.bumptech.glide.request.RequestOptions;
+
+import jp.wasabeef.glide.transformations.RoundedCornersTransformation;
+import nova.daniel.empatica.R;
+
+/**
+ * Glide extension with the options of the caregiver thumbnails, available as
+ * {@code GlideApp.with(context).load(url).caregiverThumbnail()}.
+ * <p>
+ * Every thumbnail shares the same transformation instance, so their cache keys are equal for the same picture
+ * and size. Both the downloaded picture and the cropped, rounded thumbnail are kept in the disk cache,
+ * so a thumbnail scrolled back into view is neither downloaded nor transformed again.
+ */
+@GlideExtension
+public final class ThumbnailExtension {
+
+    private static final Transformation<Bitmap> ROUNDED_THUMBNAIL =
+            new MultiTransformation<>(new CenterCrop(), new RoundedCornersTransformation(45, 2));
+
+    private ThumbnailExtension() {
+    }
+
+    /**
+     * Center crops and rounds the corners of a caregiver picture, with a placeholder while it loads.
+     *
+     * @param options Options of the request
+     * @return The same options
+     */
+    @GlideOption
+    public static RequestOptions caregiverThumbnail(RequestOptions options) {
+        return options
+                .placeholder(R.drawable.ic_person_outline_white_24dp)
+                .transform(ROUNDED_THUMBNAIL)
+                .diskCacheStrategy(DiskCacheStrategy.ALL);
+    }
+}
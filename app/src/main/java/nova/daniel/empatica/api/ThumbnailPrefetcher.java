@@ -0,0 +1,260 @@
+package nova.daniel.empatica.api;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.net.ConnectivityManager;
+import android.os.Process;
+import android.os.SystemClock;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.request.FutureTarget;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+import nova.daniel.empatica.R;
+import nova.daniel.empatica.model.Caregiver;
+
+/**
+ * Singleton that downloads and decodes the thumbnails of synced caregivers in the background,
+ * so the caregiver list and the day view find them in Glide's caches on their first paint.
+ * <p>
+ * Each picture is downloaded into Glide's disk cache, and then decoded with the same options and sizes as the
+ * displayed thumbnails, see {@link ThumbnailExtension}, which stores the transformed thumbnails in the disk
+ * cache and keeps them in the memory cache.
+ * Pictures already in the disk cache are only decoded, and every picture is prefetched once per process.
+ * <p>
+ * Prefetching is bounded, so it does not compete with the requests of the displayed rows:
+ * - At most thumbnail_prefetch_threads pictures are prefetched at once, on background priority threads,
+ * and with a low Glide priority.
+ * - Downloads are spaced so they average at most thumbnail_prefetch_kb_per_second, see {@link BandwidthBudget}.
+ * - Nothing is downloaded on metered networks, thumbnails are then loaded when displayed. The network is checked
+ * again before each download, so pictures queued before the network became metered are skipped.
+ * Skipped and failed pictures can be queued again by a later sync.
+ * <p>
+ * Pictures are downloaded and decoded through a {@link PictureLoader}, Glide by default, so tests can run the
+ * prefetcher against a local server.
+ */
+@SuppressLint("StaticFieldLeak")
+public class ThumbnailPrefetcher {
+
+    private static final long TIMEOUT_S = 30;
+
+    private static ThumbnailPrefetcher instance = null;
+
+    private final PictureLoader mLoader;
+    private final BooleanSupplier mMetered;
+    private final LongSupplier mClock;
+    private final ThreadPoolExecutor mExecutor;
+    private final BandwidthBudget mBudget;
+    private final int[] mSizes;
+
+    // URLs already queued, so each picture is prefetched once
+    private final Set<String> mQueued = ConcurrentHashMap.newKeySet();
+
+    private ThumbnailPrefetcher(Context context) {
+        this(new GlidePictureLoader(GlideApp.with(context)),
+                () -> isMetered(context),
+                SystemClock::elapsedRealtime,
+                new BandwidthBudget(
+                        context.getResources().getInteger(R.integer.thumbnail_prefetch_kb_per_second) * 1024L,
+                        context.getResources().getInteger(R.integer.thumbnail_prefetch_estimated_kb) * 1024L),
+                context.getResources().getInteger(R.integer.thumbnail_prefetch_threads),
+                runnable -> {
+                    Thread thread = new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }, "thumbnail-prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new int[]{
+                        context.getResources().getDimensionPixelSize(R.dimen.caregiver_thumbnail_size),
+                        context.getResources().getDimensionPixelSize(R.dimen.slot_thumbnail_size)});
+    }
+
+    /**
+     * @param loader        Downloads and decodes the pictures
+     * @param metered       True while the active network is metered
+     * @param clock         Monotonic clock of the bandwidth budget, in milliseconds
+     * @param budget        Bandwidth budget of the downloads
+     * @param threads       Maximum number of pictures prefetched at once
+     * @param threadFactory Creates the prefetch threads
+     * @param sizes         Sizes the thumbnails are decoded at
+     */
+    @VisibleForTesting
+    ThumbnailPrefetcher(PictureLoader loader, BooleanSupplier metered, LongSupplier clock, BandwidthBudget budget,
+                        int threads, ThreadFactory threadFactory, int[] sizes) {
+        mLoader = loader;
+        mMetered = metered;
+        mClock = clock;
+        mBudget = budget;
+        mExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        mSizes = sizes;
+    }
+
+    public static synchronized ThumbnailPrefetcher getInstance(Context context) {
+        if (instance == null)
+            instance = new ThumbnailPrefetcher(context.getApplicationContext());
+        return instance;
+    }
+
+    /**
+     * Queues the thumbnails of the given caregivers, skipping the ones already queued.
+     *
+     * @param caregivers Synced caregivers
+     */
+    public void prefetch(List<Caregiver> caregivers) {
+        if (mMetered.getAsBoolean())
+            return;
+        for (Caregiver caregiver : caregivers) {
+            String url = caregiver.mPictureURL;
+            if (url != null && mQueued.add(url))
+                mExecutor.execute(() -> prefetch(url));
+        }
+    }
+
+    /**
+     * @return Number of thumbnails waiting to be prefetched
+     */
+    public int getQueueDepth() {
+        return mExecutor.getQueue().size();
+    }
+
+    /**
+     * Waits for the queued thumbnails to be prefetched.
+     *
+     * @param timeoutMs Maximum time to wait, in milliseconds
+     * @return True if every queued thumbnail was prefetched or skipped in time
+     */
+    @VisibleForTesting
+    boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (mExecutor.getCompletedTaskCount() < mExecutor.getTaskCount()) {
+            if (System.nanoTime() > deadline)
+                return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Downloads a picture if it is not in the disk cache yet, and decodes its thumbnail at every displayed size.
+     * Runs on a prefetch thread, failed pictures are left for Glide to load when displayed.
+     * Pictures that are not cached are skipped if the network became metered since they were queued.
+     */
+    private void prefetch(String url) {
+        try {
+            if (mLoader.getCachedSize(url) < 0) {
+                if (mMetered.getAsBoolean()) {
+                    mQueued.remove(url);
+                    return;
+                }
+                long reserved = mBudget.getEstimatedBytes();
+                long wait = mBudget.reserve(reserved, mClock.getAsLong());
+                if (wait > 0)
+                    Thread.sleep(wait);
+                mBudget.reconcile(reserved, mLoader.download(url));
+            }
+
+            for (int size : mSizes)
+                mLoader.decode(url, size);
+        } catch (ExecutionException | TimeoutException e) {
+            mQueued.remove(url);
+            System.out.println("ThumbnailPrefetcher: Error prefetching " + url + ", " + e.getMessage());
+        } catch (InterruptedException e) {
+            mQueued.remove(url);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean isMetered(Context context) {
+        ConnectivityManager connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return connectivity == null || connectivity.isActiveNetworkMetered();
+    }
+
+    /**
+     * Downloads and decodes the pictures, on the calling thread.
+     */
+    interface PictureLoader {
+        /**
+         * @param url URL of the picture
+         * @return Size in bytes of the picture in the disk cache, or -1 if it has not been downloaded
+         */
+        long getCachedSize(String url) throws InterruptedException;
+
+        /**
+         * Downloads a picture into the disk cache.
+         *
+         * @param url URL of the picture
+         * @return Size in bytes of the downloaded picture
+         */
+        long download(String url) throws ExecutionException, TimeoutException, InterruptedException;
+
+        /**
+         * Decodes the thumbnail of a downloaded picture, into the disk and memory caches.
+         *
+         * @param url  URL of the picture
+         * @param size Width and height of the thumbnail, in pixels
+         */
+        void decode(String url, int size) throws ExecutionException, TimeoutException, InterruptedException;
+    }
+
+    /**
+     * Loads the pictures with Glide, with a low priority, and with the same options as the displayed thumbnails.
+     */
+    private static class GlidePictureLoader implements PictureLoader {
+
+        private final GlideRequests mGlide;
+
+        GlidePictureLoader(GlideRequests glide) {
+            mGlide = glide;
+        }
+
+        @Override
+        public long getCachedSize(String url) throws InterruptedException {
+            FutureTarget<File> cached = mGlide.downloadOnly().load(url).onlyRetrieveFromCache(true).submit();
+            try {
+                return cached.get(TIMEOUT_S, TimeUnit.SECONDS).length();
+            } catch (ExecutionException | TimeoutException e) {
+                return -1;
+            } finally {
+                mGlide.clear(cached);
+            }
+        }
+
+        @Override
+        public long download(String url) throws ExecutionException, TimeoutException, InterruptedException {
+            FutureTarget<File> download = mGlide.downloadOnly().load(url).priority(Priority.LOW).submit();
+            try {
+                return download.get(TIMEOUT_S, TimeUnit.SECONDS).length();
+            } finally {
+                mGlide.clear(download);
+            }
+        }
+
+        @Override
+        public void decode(String url, int size) throws ExecutionException, TimeoutException, InterruptedException {
+            FutureTarget<Drawable> thumbnail = mGlide.load(url)
+                    .caregiverThumbnail()
+                    .priority(Priority.LOW)
+                    .submit(size, size);
+            thumbnail.get(TIMEOUT_S, TimeUnit.SECONDS);
+            mGlide.clear(thumbnail); // Released to the memory cache
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package nova.daniel.empatica.autofit;
+
+import java.util.List;
+
+/**
+ * Strategy used by the auto-fit task to assign caregivers to the available rooms of a single hour.
+ * <p>
+ * Implementations must register every assigned slot in the snapshot through
+ * {@link ScheduleSnapshot#assign(int, int, int)}.
+ */
+public interface AssignmentStrategy {
+
+    /**
+     * Assigns caregivers to the given rooms for the given hour.
+     *
+     * @param snapshot Current schedule
+     * @param scorer   Scorer of the candidates, built over the same snapshot
+     * @param hour     Hour of the day being scheduled
+     * @param rooms    Available room numbers
+     * @return Index of the caregiver assigned to each room, in the same order as rooms.
+     * {@link CandidateScorer#NO_CANDIDATE} for rooms without a caregiver.
+     */
+    int[] assignHour(ScheduleSnapshot snapshot, CandidateScorer scorer, int hour, List<Integer> rooms);
+}
@@ -0,0 +1,158 @@
+package nova.daniel.empatica.autofit;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scores every caregiver of a {@link ScheduleSnapshot} as a candidate for a room, using a set of {@link ScoringRule}.
+ * <p>
+ * Scores are kept in a reusable double array indexed by the {@link CaregiverIndex} of each caregiver,
+ * so scoring a room in serial mode does not allocate. New criteria are added by passing new rules to the constructor.
+ * <p>
+ * A caregiver is a candidate for a room if they are not already working at the given hour, and if they
+ * have not reached the maximum number of slots for the current week.
+ * <p>
+ * Within a room, the score of each candidate only depends on the snapshot, so with large numbers of caregivers
+ * the candidates are scored in parallel on a bounded fork-join pool, in contiguous chunks. The best candidate is
+ * then picked by a scan in index order, so the result, including ties, is the same as in serial mode.
+ * Rules are therefore called concurrently for different caregivers, and must only read shared state in score().
+ * Serial mode can be forced with {@link #setForceSerial(boolean)} to compare results.
+ */
+public class CandidateScorer {
+
+    public static final int NO_CANDIDATE = -1;
+
+    // Maximum number of caregivers scored by each parallel chunk, with less than two chunks scoring is serial
+    // The pool is bounded to 4 threads, to leave cores for the UI
+    private static final int CHUNK_SIZE = 1024;
+    private static final ForkJoinPool POOL =
+            new ForkJoinPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+    private static volatile boolean sForceSerial = false;
+
+    private final ScheduleSnapshot mSnapshot;
+    private final ScoringRule[] mRules;
+    private final int mMaxWeekSlots;
+
+    private final double[] mScores;
+    private final boolean[] mEligible;
+
+    /**
+     * @param snapshot     Schedule used to score the candidates
+     * @param maxWeekSlots Maximum number of slots a caregiver can work per week, including over-time
+     * @param rules        Scoring rules, the score of a candidate is the sum of the score of each rule
+     */
+    public CandidateScorer(ScheduleSnapshot snapshot, int maxWeekSlots, List<ScoringRule> rules) {
+        mSnapshot = snapshot;
+        mMaxWeekSlots = maxWeekSlots;
+        mRules = rules.toArray(new ScoringRule[0]);
+        mScores = new double[snapshot.size()];
+        mEligible = new boolean[snapshot.size()];
+    }
+
+    /**
+     * Computes the score of every candidate for the given room.
+     * Results can be read with {@link #isEligible(int)} and {@link #getScore(int)} until the next call.
+     *
+     * @param hour Hour of the day being scheduled
+     * @param room Room number being scheduled
+     */
+    public void scoreRoom(int hour, int room) {
+        for (ScoringRule rule : mRules)
+            rule.prepare(mSnapshot, hour, room);
+
+        if (sForceSerial || mScores.length < 2 * CHUNK_SIZE)
+            scoreRange(hour, room, 0, mScores.length);
+        else
+            POOL.invoke(new ScoreChunkTask(hour, room, 0, mScores.length));
+    }
+
+    /**
+     * Scores the candidates with indices in [from, to)
+     */
+    private void scoreRange(int hour, int room, int from, int to) {
+        for (int caregiver = from; caregiver < to; caregiver++) {
+            mEligible[caregiver] = !mSnapshot.isBusy(caregiver, hour)
+                    && mSnapshot.getWeekCount(caregiver) < mMaxWeekSlots;
+
+            double score = 0;
+            if (mEligible[caregiver])
+                for (ScoringRule rule : mRules)
+                    score += rule.score(mSnapshot, caregiver, room);
+            mScores[caregiver] = score;
+        }
+    }
+
+    /**
+     * Scores the candidates for the given room and returns the best one.
+     * In case of ties the candidate with the lowest index is picked.
+     *
+     * @param hour Hour of the day being scheduled
+     * @param room Room number being scheduled
+     * @return Index of the best candidate, or NO_CANDIDATE if no caregiver is eligible
+     */
+    public int pickBest(int hour, int room) {
+        scoreRoom(hour, room);
+
+        int best = NO_CANDIDATE;
+        for (int caregiver = 0; caregiver < mScores.length; caregiver++) {
+            if (mEligible[caregiver] && (best == NO_CANDIDATE || mScores[caregiver] > mScores[best]))
+                best = caregiver;
+        }
+        return best;
+    }
+
+    /**
+     * @param caregiver Index of the caregiver
+     * @return True if the caregiver was a candidate in the last scored room
+     */
+    public boolean isEligible(int caregiver) {
+        return mEligible[caregiver];
+    }
+
+    /**
+     * @param caregiver Index of the caregiver
+     * @return Score of the caregiver in the last scored room
+     */
+    public double getScore(int caregiver) {
+        return mScores[caregiver];
+    }
+
+    /**
+     * Forces all scorers to run in the calling thread, regardless of the number of caregivers.
+     *
+     * @param forceSerial True to disable parallel scoring
+     */
+    public static void setForceSerial(boolean forceSerial) {
+        sForceSerial = forceSerial;
+    }
+
+    /**
+     * Fork-join task that splits a range of candidates in halves until they are smaller than CHUNK_SIZE.
+     * Each chunk writes to its own slice of the score arrays.
+     */
+    private class ScoreChunkTask extends RecursiveAction {
+        private final int mHour;
+        private final int mRoom;
+        private final int mFrom;
+        private final int mTo;
+
+        ScoreChunkTask(int hour, int room, int from, int to) {
+            mHour = hour;
+            mRoom = room;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom <= CHUNK_SIZE) {
+                scoreRange(mHour, mRoom, mFrom, mTo);
+            } else {
+                int middle = (mFrom + mTo) >>> 1;
+                invokeAll(new ScoreChunkTask(mHour, mRoom, mFrom, middle),
+                        new ScoreChunkTask(mHour, mRoom, middle, mTo));
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package nova.daniel.empatica.autofit;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns caregiver uuids into dense int indices, from 0 to size()-1.
+ * The auto-fit structures ({@link ScheduleSnapshot}, {@link CandidateScorer}) are arrays indexed by these values,
+ * so the uuid strings are only used when loading data and when writing the final plan.
+ */
+public class CaregiverIndex {
+
+    private final String[] mIds;
+    private final Map<String, Integer> mIndices;
+
+    /**
+     * @param caregiverIds IDs of the caregivers, the index of each caregiver is its position in the list
+     */
+    public CaregiverIndex(List<String> caregiverIds) {
+        mIds = caregiverIds.toArray(new String[0]);
+        mIndices = new HashMap<>(mIds.length * 2);
+        for (int i = 0; i < mIds.length; i++)
+            mIndices.put(mIds[i], i);
+    }
+
+    /**
+     * @param caregiverId ID of the caregiver
+     * @return Index of the caregiver, or -1 if it is not part of the index
+     */
+    public int indexOf(String caregiverId) {
+        Integer index = mIndices.get(caregiverId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param index Index of the caregiver
+     * @return ID of the caregiver
+     */
+    public String getId(int index) {
+        return mIds[index];
+    }
+
+    public int size() {
+        return mIds.length;
+    }
+}
@@ -0,0 +1,28 @@
+package nova.daniel.empatica.autofit;
+
+/**
+ * Adds a score to caregivers that are amongst those who have worked the least number of hours
+ * in the current and past 4 weeks.
+ */
+public class FairnessRule implements ScoringRule {
+
+    private final double mScore;
+    private int mMinHours;
+
+    /**
+     * @param score Score added to the caregivers that have worked the least
+     */
+    public FairnessRule(double score) {
+        mScore = score;
+    }
+
+    @Override
+    public void prepare(ScheduleSnapshot snapshot, int hour, int room) {
+        mMinHours = snapshot.getMinHistoryCount();
+    }
+
+    @Override
+    public double score(ScheduleSnapshot snapshot, int caregiver, int room) {
+        return snapshot.getHistoryCount(caregiver) <= mMinHours ? mScore : 0;
+    }
+}
@@ -0,0 +1,23 @@
+package nova.daniel.empatica.autofit;
+
+import java.util.List;
+
+/**
+ * Fills the rooms one at a time, picking the best scored candidate for each room.
+ * Each assignment is registered before scoring the next room, so a caregiver picked for a room is no longer
+ * a candidate for the following ones.
+ */
+public class GreedyAssignment implements AssignmentStrategy {
+
+    @Override
+    public int[] assignHour(ScheduleSnapshot snapshot, CandidateScorer scorer, int hour, List<Integer> rooms) {
+        int[] assigned = new int[rooms.size()];
+        for (int i = 0; i < assigned.length; i++) {
+            int room = rooms.get(i);
+            assigned[i] = scorer.pickBest(hour, room);
+            if (assigned[i] != CandidateScorer.NO_CANDIDATE)
+                snapshot.assign(assigned[i], hour, room);
+        }
+        return assigned;
+    }
+}
@@ -0,0 +1,83 @@
+package nova.daniel.empatica.autofit;
+
+import java.util.Arrays;
+
+/**
+ * Hungarian algorithm for the rectangular assignment problem, using the potentials formulation.
+ * Given a cost matrix with no more rows than columns, assigns every row to a different column minimizing
+ * the total cost, in O(rows^2 * columns).
+ */
+public class HungarianSolver {
+
+    private HungarianSolver() {
+    }
+
+    /**
+     * Solves the assignment problem for the given cost matrix.
+     *
+     * @param cost Cost matrix, cost[row][column]. The number of rows must not exceed the number of columns.
+     * @return Column assigned to each row
+     */
+    public static int[] solve(double[][] cost) {
+        int rows = cost.length;
+        int columns = rows == 0 ? 0 : cost[0].length;
+        if (rows > columns)
+            throw new IllegalArgumentException("The cost matrix must not have more rows than columns");
+
+        // Arrays are 1-based, index 0 is used as the sentinel of the augmenting paths
+        double[] u = new double[rows + 1];
+        double[] v = new double[columns + 1];
+        int[] p = new int[columns + 1];   // row matched to each column
+        int[] way = new int[columns + 1]; // previous column on the augmenting path
+        double[] minv = new double[columns + 1];
+        boolean[] used = new boolean[columns + 1];
+
+        for (int i = 1; i <= rows; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                int j1 = 0;
+                double delta = Double.POSITIVE_INFINITY;
+                for (int j = 1; j <= columns; j++) {
+                    if (!used[j]) {
+                        double current = cost[i0 - 1][j - 1] - u[i0] - v[j];
+                        if (current < minv[j]) {
+                            minv[j] = current;
+                            way[j] = j0;
+                        }
+                        if (minv[j] < delta) {
+                            delta = minv[j];
+                            j1 = j;
+                        }
+                    }
+                }
+                for (int j = 0; j <= columns; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+
+            // Flip the augmenting path
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        int[] result = new int[rows];
+        for (int j = 1; j <= columns; j++)
+            if (p[j] != 0)
+                result[p[j] - 1] = j - 1;
+        return result;
+    }
+}
@@ -0,0 +1,55 @@
+package nova.daniel.empatica.autofit;
+
+import java.util.List;
+
+/**
+ * Solves each hour as a weighted bipartite matching between the available rooms and the candidate caregivers,
+ * maximizing the total score of the hour. The scores are the same used by {@link GreedyAssignment},
+ * computed with the schedule as it was before the hour.
+ * <p>
+ * The matching is solved with the Hungarian algorithm, see {@link HungarianSolver}. As rooms are far fewer than
+ * caregivers, the complexity is O(rooms^2 * caregivers).
+ * Filling a room always has priority over the score, so the number of assigned rooms is the same as with the
+ * greedy strategy.
+ */
+public class OptimalAssignment implements AssignmentStrategy {
+
+    // Added to every real assignment so that leaving a room empty is never preferred
+    private static final double FILL_BONUS = 1000d;
+
+    @Override
+    public int[] assignHour(ScheduleSnapshot snapshot, CandidateScorer scorer, int hour, List<Integer> rooms) {
+        int numRooms = rooms.size();
+        int[] assigned = new int[numRooms];
+        if (numRooms == 0)
+            return assigned;
+
+        // Eligibility does not depend on the room, so the candidates are the same for every room of the hour
+        scorer.scoreRoom(hour, rooms.get(0));
+        int[] candidates = new int[snapshot.size()];
+        int numCandidates = 0;
+        for (int caregiver = 0; caregiver < snapshot.size(); caregiver++)
+            if (scorer.isEligible(caregiver))
+                candidates[numCandidates++] = caregiver;
+
+        // Rooms are the rows, candidates the columns. Extra columns represent leaving a room empty, with cost 0.
+        double[][] cost = new double[numRooms][Math.max(numCandidates, numRooms)];
+        for (int i = 0; i < numRooms; i++) {
+            if (i > 0)
+                scorer.scoreRoom(hour, rooms.get(i));
+            for (int j = 0; j < numCandidates; j++)
+                cost[i][j] = -(scorer.getScore(candidates[j]) + FILL_BONUS);
+        }
+
+        int[] columns = HungarianSolver.solve(cost);
+        for (int i = 0; i < numRooms; i++) {
+            if (columns[i] >= 0 && columns[i] < numCandidates) {
+                assigned[i] = candidates[columns[i]];
+                snapshot.assign(assigned[i], hour, rooms.get(i));
+            } else {
+                assigned[i] = CandidateScorer.NO_CANDIDATE;
+            }
+        }
+        return assigned;
+    }
+}
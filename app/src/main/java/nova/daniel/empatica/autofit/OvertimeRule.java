@@ -0,0 +1,24 @@
+package nova.daniel.empatica.autofit;
+
+/**
+ * Adds a score to caregivers that do not have any over-time for the current week.
+ */
+public class OvertimeRule implements ScoringRule {
+
+    private final int mMaxWorkHours;
+    private final double mScore;
+
+    /**
+     * @param maxWorkHours Number of hours per week that can be worked without over-time
+     * @param score        Score added to caregivers without over-time
+     */
+    public OvertimeRule(int maxWorkHours, double score) {
+        mMaxWorkHours = maxWorkHours;
+        mScore = score;
+    }
+
+    @Override
+    public double score(ScheduleSnapshot snapshot, int caregiver, int room) {
+        return snapshot.getWeekCount(caregiver) < mMaxWorkHours ? mScore : 0;
+    }
+}
@@ -0,0 +1,32 @@
+package nova.daniel.empatica.autofit;
+
+/**
+ * For caregivers already working on the same day, adds a score based on the distance between the room being
+ * scheduled and the closest room they are assigned to.
+ * If the rooms are the same the full score is assigned, otherwise it is computed as score/distance.
+ * If the caregiver has no appointments that day, the score is 0.
+ */
+public class RoomProximityRule implements ScoringRule {
+
+    private final double mScore;
+
+    /**
+     * @param score Score for a caregiver already assigned to the same room
+     */
+    public RoomProximityRule(double score) {
+        mScore = score;
+    }
+
+    @Override
+    public double score(ScheduleSnapshot snapshot, int caregiver, int room) {
+        double score = 0;
+        int count = snapshot.getDayRoomsCount(caregiver);
+        for (int i = 0; i < count; i++) {
+            int distance = Math.abs(snapshot.getDayRoom(caregiver, i) - room);
+            double newScore = distance == 0 ? mScore : mScore / distance;
+            if (newScore > score)
+                score = newScore;
+        }
+        return score;
+    }
+}
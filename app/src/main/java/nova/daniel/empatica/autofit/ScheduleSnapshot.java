@@ -0,0 +1,246 @@
+package nova.daniel.empatica.autofit;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import nova.daniel.empatica.TimeBuckets;
+import nova.daniel.empatica.model.CaregiverWorkload;
+import nova.daniel.empatica.persistence.CaregiverRepository;
+
+/**
+ * In-memory snapshot of the appointments needed by {@link nova.daniel.empatica.AutoFitOperationTask}
+ * to schedule one or more days of the same week.
+ * <p>
+ * The snapshot is loaded with one aggregate query returning the workload of every caregiver over the current week
+ * and the past 4 weeks, see {@link CaregiverWorkload}, and then indexed by caregiver, day and hour, so the auto-fit loops can score candidates without reading
+ * from the database. The weekly counts are shared by all days, so the weekly hour limits hold across the
+ * whole range being scheduled.
+ * Caregivers are referenced by their {@link CaregiverIndex} index, and all per-caregiver values are kept in
+ * primitive arrays, so reading them does not allocate.
+ * <p>
+ * The day being scheduled is set with {@link #selectDay(int)}, the per-day accessors and
+ * {@link #assign(int, int, int)} refer to that day.
+ * Every slot assigned by the task has to be registered through {@link #assign(int, int, int)} so the
+ * indexes stay consistent with what has been scheduled so far.
+ */
+public class ScheduleSnapshot {
+
+    private static final int HOURS_PER_DAY = 24;
+    private static final int WEEKS_HISTORY = 4;
+
+    private final CaregiverIndex mIndex;
+    private final int mNumDays;
+    private int mDay = 0; // Selected day
+
+    // Number of appointments per caregiver for the current week
+    private final int[] mWeekCounts;
+    // Number of appointments per caregiver for the current and last 4 weeks
+    private final int[] mHistoryCounts;
+    // Bitmask of the hours of each day each caregiver is already working
+    private final int[][] mBusyHours;
+    // Rooms assigned to each caregiver on each day, up to one per hour of the day. Created when first needed.
+    private final int[][][] mDayRooms;
+    private final int[][] mDayRoomsCount;
+    // Rooms taken for each hour of each day
+    private final List<List<List<Integer>>> mHourRooms;
+
+    private ScheduleSnapshot(CaregiverIndex index, int numDays) {
+        mIndex = index;
+        mNumDays = numDays;
+        int size = index.size();
+        mWeekCounts = new int[size];
+        mHistoryCounts = new int[size];
+        mBusyHours = new int[numDays][size];
+        mDayRooms = new int[numDays][size][];
+        mDayRoomsCount = new int[numDays][size];
+        mHourRooms = new ArrayList<>(numDays);
+        for (int day = 0; day < numDays; day++) {
+            List<List<Integer>> hourRooms = new ArrayList<>(HOURS_PER_DAY);
+            for (int hour = 0; hour < HOURS_PER_DAY; hour++)
+                hourRooms.add(new ArrayList<>());
+            mHourRooms.add(hourRooms);
+        }
+    }
+
+    /**
+     * Synchronously loads the snapshot for the given days, which must all be in the same week.
+     * The ranges used are:
+     * - Week: from the start of the week of the days, up to the start of the next week.
+     * - History: from the start of the week 4 weeks before the days, up to the end of the current week.
+     * - Day: from 0:00 to 23:59 of each day.
+     *
+     * @param repository Caregivers repository
+     * @param days       Days to schedule, in the same week
+     * @param index      Index of all caregivers that are candidates for the auto-fit
+     * @return Snapshot for the given days, with the first day selected
+     */
+    public static ScheduleSnapshot load(CaregiverRepository repository, List<Date> days, CaregiverIndex index) {
+        long firstDay = days.get(0).getTime();
+        long weekStart = TimeBuckets.weekStart(firstDay);
+        long weekEnd = TimeBuckets.addWeeks(weekStart, 1);
+        long historyStart = TimeBuckets.weekStart(TimeBuckets.addWeeks(TimeBuckets.dayStart(firstDay), -WEEKS_HISTORY));
+        long historyEnd = TimeBuckets.weekEnd(firstDay);
+
+        long slotsStart = Long.MAX_VALUE;
+        long slotsEnd = Long.MIN_VALUE;
+        for (Date day : days) {
+            slotsStart = Math.min(slotsStart, TimeBuckets.dayStart(day.getTime()));
+            slotsEnd = Math.max(slotsEnd, TimeBuckets.dayEnd(day.getTime()));
+        }
+
+        List<CaregiverWorkload> workloads = repository.getWorkloadSync(weekStart, weekEnd, historyStart, historyEnd,
+                slotsStart, slotsEnd);
+        return fromWorkloads(days, index, workloads);
+    }
+
+    /**
+     * Indexes the workloads loaded for the given days, see {@link #load(CaregiverRepository, List, CaregiverIndex)}.
+     *
+     * @param days      Days to schedule, in the same week
+     * @param index     Index of all caregivers that are candidates for the auto-fit
+     * @param workloads Workload of every caregiver, over the ranges of the given days
+     * @return Snapshot for the given days, with the first day selected
+     */
+    static ScheduleSnapshot fromWorkloads(List<Date> days, CaregiverIndex index, List<CaregiverWorkload> workloads) {
+        ScheduleSnapshot snapshot = new ScheduleSnapshot(index, days.size());
+        long[] dayStarts = new long[days.size()];
+        long[] dayEnds = new long[days.size()];
+        for (int day = 0; day < days.size(); day++) {
+            long time = days.get(day).getTime();
+            dayStarts[day] = TimeBuckets.dayStart(time);
+            dayEnds[day] = TimeBuckets.dayEnd(time);
+        }
+
+        for (CaregiverWorkload workload : workloads) {
+            // Caregivers that are not part of the index are never candidates, but their rooms are still taken
+            int caregiver = index.indexOf(workload.uuid);
+            if (caregiver != -1) {
+                snapshot.mWeekCounts[caregiver] = workload.mWeekCount;
+                snapshot.mHistoryCounts[caregiver] = workload.mHistoryCount;
+            }
+            if (workload.mSlots == null)
+                continue;
+
+            for (String slot : workload.mSlots.split(",")) {
+                int separator = slot.indexOf(':');
+                long time = Long.parseLong(slot.substring(0, separator));
+                int room = Integer.parseInt(slot.substring(separator + 1));
+
+                int day = -1;
+                for (int i = 0; i < dayStarts.length && day == -1; i++)
+                    if (time >= dayStarts[i] && time <= dayEnds[i])
+                        day = i;
+                if (day == -1)
+                    continue;
+
+                int hour = TimeBuckets.hourOfDay(time);
+                snapshot.mHourRooms.get(day).get(hour).add(room);
+                if (caregiver != -1)
+                    snapshot.addToDay(day, caregiver, hour, room);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Selects the day the per-day accessors and assignments refer to.
+     *
+     * @param day Position of the day in the list of days the snapshot was loaded with
+     */
+    public void selectDay(int day) {
+        if (day < 0 || day >= mNumDays)
+            throw new IllegalArgumentException("Day " + day + " is not part of the snapshot");
+        mDay = day;
+    }
+
+    /**
+     * Registers a new slot assigned to a caregiver on the selected day.
+     *
+     * @param caregiver Index of the caregiver
+     * @param hour      Hour of the day
+     * @param room      Room number
+     */
+    public void assign(int caregiver, int hour, int room) {
+        mWeekCounts[caregiver]++;
+        mHistoryCounts[caregiver]++;
+        addToDay(mDay, caregiver, hour, room);
+        mHourRooms.get(mDay).get(hour).add(room);
+    }
+
+    private void addToDay(int day, int caregiver, int hour, int room) {
+        if (mDayRooms[day][caregiver] == null)
+            mDayRooms[day][caregiver] = new int[HOURS_PER_DAY];
+        if (mDayRoomsCount[day][caregiver] < HOURS_PER_DAY)
+            mDayRooms[day][caregiver][mDayRoomsCount[day][caregiver]++] = room;
+        mBusyHours[day][caregiver] |= 1 << hour;
+    }
+
+    /**
+     * @return Number of caregivers in the snapshot
+     */
+    public int size() {
+        return mIndex.size();
+    }
+
+    /**
+     * @param caregiver Index of the caregiver
+     * @return Number of slots assigned to the caregiver in the current week
+     */
+    public int getWeekCount(int caregiver) {
+        return mWeekCounts[caregiver];
+    }
+
+    /**
+     * @param caregiver Index of the caregiver
+     * @return Number of slots assigned to the caregiver in the current and past 4 weeks
+     */
+    public int getHistoryCount(int caregiver) {
+        return mHistoryCounts[caregiver];
+    }
+
+    /**
+     * @return Minimum number of slots assigned to any caregiver in the current and past 4 weeks
+     */
+    public int getMinHistoryCount() {
+        int min = Integer.MAX_VALUE;
+        for (int count : mHistoryCounts)
+            if (count < min)
+                min = count;
+        return min;
+    }
+
+    /**
+     * @param caregiver Index of the caregiver
+     * @param hour      Hour of the day
+     * @return True if the caregiver is already assigned at the given hour of the selected day
+     */
+    public boolean isBusy(int caregiver, int hour) {
+        return (mBusyHours[mDay][caregiver] & (1 << hour)) != 0;
+    }
+
+    /**
+     * @param caregiver Index of the caregiver
+     * @return Number of rooms assigned to the caregiver on the selected day
+     */
+    public int getDayRoomsCount(int caregiver) {
+        return mDayRoomsCount[mDay][caregiver];
+    }
+
+    /**
+     * @param caregiver Index of the caregiver
+     * @param position  Position of the room, from 0 to getDayRoomsCount(caregiver)-1
+     * @return Room number
+     */
+    public int getDayRoom(int caregiver, int position) {
+        return mDayRooms[mDay][caregiver][position];
+    }
+
+    /**
+     * @param hour Hour of the day
+     * @return Room numbers already taken at the given hour of the selected day
+     */
+    public List<Integer> getRoomsForHour(int hour) {
+        return mHourRooms.get(mDay).get(hour);
+    }
+}
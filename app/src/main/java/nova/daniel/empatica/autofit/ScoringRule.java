@@ -0,0 +1,32 @@
+package nova.daniel.empatica.autofit;
+
+/**
+ * A single criterion used by {@link CandidateScorer} to score caregivers for a room.
+ * The score of a candidate is the sum of the scores of every rule.
+ * <p>
+ * Rules read from the {@link ScheduleSnapshot} and must not allocate while scoring,
+ * as they are called once per candidate, per room, per hour.
+ * {@link #score(ScheduleSnapshot, int, int)} can be called from several threads at once, so it must not modify
+ * any state; values shared by all candidates are computed in {@link #prepare(ScheduleSnapshot, int, int)}.
+ */
+public interface ScoringRule {
+
+    /**
+     * Called once per room, before its candidates are scored.
+     * Used to compute values shared by all candidates of the room.
+     *
+     * @param snapshot Current schedule
+     * @param hour     Hour of the day being scheduled
+     * @param room     Room number being scheduled
+     */
+    default void prepare(ScheduleSnapshot snapshot, int hour, int room) {
+    }
+
+    /**
+     * @param snapshot  Current schedule
+     * @param caregiver Index of the candidate caregiver
+     * @param room      Room number being scheduled
+     * @return Score of the candidate for the given room
+     */
+    double score(ScheduleSnapshot snapshot, int caregiver, int room);
+}
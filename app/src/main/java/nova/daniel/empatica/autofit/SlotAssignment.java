@@ -0,0 +1,20 @@
+package nova.daniel.empatica.autofit;
+
+import java.util.Date;
+
+/**
+ * Represents a single time-slot planned by the auto-fit task: a caregiver assigned to a room at a given date.
+ * Assignments are collected into a plan, and only turned into {@link nova.daniel.empatica.model.Appointment}
+ * objects when the whole plan is written to the repository.
+ */
+public class SlotAssignment {
+    public final String caregiverId;
+    public final Date date;
+    public final int room;
+
+    public SlotAssignment(String caregiverId, Date date, int room) {
+        this.caregiverId = caregiverId;
+        this.date = date;
+        this.room = room;
+    }
+}
@@ -1,24 +1,36 @@
 package nova.daniel.empatica.model;
 
 import androidx.room.ColumnInfo;
-import androidx.room.Embedded;
 import androidx.room.Entity;
+import androidx.room.ForeignKey;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
-import androidx.room.RoomWarnings;
 
 import java.util.Calendar;
 import java.util.Date;
 
-import nova.daniel.empatica.Utils;
+import nova.daniel.empatica.TimeBuckets;
 
 /**
  * Class that represents an appointment. Consisting of a patient name, room number, date, and
  * reference to the caregiver.
  * Marked as entity to be used directly with Room persistence library.
+ * <p>
+ * The caregiver is stored as a foreign key to its uuid. Deleting or changing the uuid of a caregiver
+ * cascades to its appointments. The caregiver object itself is not stored, it is resolved when reading
+ * through a {@link nova.daniel.empatica.persistence.CaregiverIdentityMap}.
+ * <p>
+ * Every query filters by a date range, so appointments are indexed by:
+ * - Caregiver and date, for the per-caregiver counts and rooms.
+ * - Date and room, which also covers the queries that only read the rooms of a date range.
  */
-@SuppressWarnings(RoomWarnings.PRIMARY_KEY_FROM_EMBEDDED_IS_DROPPED)
-@Entity
+@Entity(foreignKeys = @ForeignKey(entity = Caregiver.class,
+        parentColumns = "uuid",
+        childColumns = "uuid",
+        onDelete = ForeignKey.CASCADE,
+        onUpdate = ForeignKey.CASCADE),
+        indices = {@Index(value = {"uuid", "date"}), @Index(value = {"date", "room_number"})})
 public class Appointment {
 
     @PrimaryKey(autoGenerate = true)
@@ -27,7 +39,10 @@ public class Appointment {
     public String mPatientName;
     @ColumnInfo(name = "room_number")
     public int mRoom;
-    @Embedded
+    @ColumnInfo(name = "uuid")
+    public String mCaregiverId;
+    // Resolved caregiver, only set on appointments read through the AppointmentRepository LiveData queries
+    @Ignore
     public Caregiver mCaregiver;
     @ColumnInfo(name = "date")
     public Date mDate;
@@ -37,7 +52,8 @@ public class Appointment {
 
     @Ignore
     public Appointment(Date date, Caregiver caregiver, String patientName, int room) {
-        this.mDate = Utils.removeMinutesSecondsAndMillis(date);
+        this.mDate = new Date(TimeBuckets.hourStart(date.getTime()));
+        this.mCaregiverId = caregiver.uuid;
         this.mCaregiver = caregiver;
         this.mPatientName = patientName;
         this.mRoom = room;
@@ -45,9 +61,7 @@ public class Appointment {
 
     @Ignore
     public int getHour() {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(mDate);
-        return cal.get(Calendar.HOUR_OF_DAY);
+        return TimeBuckets.hourOfDay(mDate.getTime());
     }
 
     @Ignore
@@ -0,0 +1,30 @@
+package nova.daniel.empatica.model;
+
+import androidx.room.ColumnInfo;
+
+/**
+ * POJO class that represents the conflicts of an appointment with the ones already saved:
+ * whether its caregiver already works at that hour, how many appointments its caregiver has in that week,
+ * and whether its room is already taken at that hour.
+ * The appointment itself is excluded, so editing an appointment does not conflict with its saved version.
+ * Used when fetching results from the repository.
+ */
+public class AppointmentConflict {
+
+    @ColumnInfo(name = "hour_busy")
+    public boolean mHourBusy;
+
+    @ColumnInfo(name = "week_count")
+    public int mWeekCount;
+
+    @ColumnInfo(name = "room_taken")
+    public boolean mRoomTaken;
+
+    /**
+     * @param maxWeekSlots Maximum number of appointments of a caregiver per week
+     * @return True if the appointment can be saved
+     */
+    public boolean isNone(int maxWeekSlots) {
+        return !mHourBusy && mWeekCount < maxWeekSlots && !mRoomTaken;
+    }
+}
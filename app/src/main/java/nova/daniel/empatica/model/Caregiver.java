@@ -4,6 +4,7 @@ import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import nova.daniel.empatica.Utils;
@@ -13,8 +14,9 @@ import nova.daniel.empatica.Utils;
  * The ID used is the same as the uuid returned by the API form where we fetch the caregivers.
  * <p>
  * Marked as entity to be used directly with Room persistence library.
+ * Caregivers are indexed by last name, the order of the paged caregivers list.
  */
-@Entity
+@Entity(indices = {@Index(value = {"last_name"})})
 public class Caregiver {
 
     @PrimaryKey
@@ -30,6 +32,10 @@ public class Caregiver {
     @ColumnInfo(name = "pic_url")
     public String mPictureURL;
 
+    // Hash of the fetched content, used to skip writing caregivers that did not change since the last sync
+    @ColumnInfo(name = "content_hash")
+    public long mContentHash;
+
     public Caregiver() {
     }
 
@@ -44,4 +50,26 @@ public class Caregiver {
                 Utils.capitalizeString(mFirstName),
                 mLastName.toUpperCase().charAt(0));
     }
+
+    /**
+     * Computes a 64 bit FNV-1a hash of the uuid, names and picture URL of the caregiver.
+     * Two caregivers with the same hash are considered equal by the sync, see
+     * {@link nova.daniel.empatica.persistence.CaregiverSyncEngine}.
+     *
+     * @return Content hash
+     */
+    @Ignore
+    public long computeContentHash() {
+        long hash = 0xcbf29ce484222325L;
+        for (String field : new String[]{uuid, mFirstName, mLastName, mPictureURL}) {
+            if (field != null)
+                for (int i = 0; i < field.length(); i++) {
+                    hash ^= field.charAt(i);
+                    hash *= 0x100000001b3L;
+                }
+            hash ^= 0x1f; // Field separator, so ("ab", "c") and ("a", "bc") hash differently
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
 }
@@ -0,0 +1,16 @@
+package nova.daniel.empatica.model;
+
+import androidx.room.Embedded;
+
+/**
+ * POJO class for a single row of the caregivers joined with their appointments in a date range.
+ * The appointment is null for caregivers without appointments in the range.
+ * Grouped into {@link CaregiverWAppointments} by the repository.
+ */
+public class CaregiverAppointmentRow {
+    @Embedded
+    public Caregiver caregiver;
+
+    @Embedded(prefix = "app_")
+    public Appointment appointment;
+}
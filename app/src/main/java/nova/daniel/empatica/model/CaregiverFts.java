@@ -0,0 +1,24 @@
+package nova.daniel.empatica.model;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+
+/**
+ * Full-text index of the first and last name of each {@link Caregiver}, used to search caregivers by name.
+ * <p>
+ * The names are not stored twice, the index reads them from the Caregiver table, and is kept in sync with it
+ * by the triggers Room creates for external content tables. Its docid is the rowid of the caregiver.
+ * <p>
+ * Marked as entity to be used directly with Room persistence library.
+ */
+@Fts4(contentEntity = Caregiver.class)
+@Entity(tableName = "caregiver_fts")
+public class CaregiverFts {
+
+    @ColumnInfo(name = "first_name")
+    public String mFirstName;
+
+    @ColumnInfo(name = "last_name")
+    public String mLastName;
+}
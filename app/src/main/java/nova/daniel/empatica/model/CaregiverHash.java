@@ -0,0 +1,13 @@
+package nova.daniel.empatica.model;
+
+import androidx.room.ColumnInfo;
+
+/**
+ * POJO class that represents the stored content hash of a caregiver's uuid.
+ * Used by the sync to detect caregivers that changed.
+ */
+public class CaregiverHash {
+    public String uuid;
+    @ColumnInfo(name = "content_hash")
+    public long mContentHash;
+}
@@ -0,0 +1,31 @@
+package nova.daniel.empatica.model;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Sync metadata of a page of caregivers fetched from the API.
+ * Stores when the page was last synced, and a hash of its content, to decide if the page has to be fetched
+ * again and if its caregivers have to be written.
+ * <p>
+ * Marked as entity to be used directly with Room persistence library.
+ */
+@Entity(tableName = "caregiver_page")
+public class CaregiverPage {
+
+    @PrimaryKey
+    public int page;
+
+    @ColumnInfo(name = "last_synced")
+    public long mLastSynced;
+
+    @ColumnInfo(name = "result_count")
+    public int mResultCount;
+
+    @ColumnInfo(name = "page_hash")
+    public long mPageHash;
+
+    public CaregiverPage() {
+    }
+}
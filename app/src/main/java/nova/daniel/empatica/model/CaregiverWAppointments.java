@@ -1,18 +1,20 @@
 package nova.daniel.empatica.model;
 
-import androidx.room.Embedded;
-import androidx.room.Relation;
-
+import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Relation POJO class to represent all {@link Caregiver} instances with a list of associated {@link Appointment}.
- * If the caregiver does not have any associated Appointment, the list is empty.
+ * POJO class to represent a {@link Caregiver} with its list of associated {@link Appointment} in a date range.
+ * If the caregiver does not have any Appointment in the range, the list is empty.
+ * Built from the rows of a single joined query, see
+ * {@link nova.daniel.empatica.persistence.CaregiverRepository#getWAppointmentsForDate(long, long)}.
  */
 public class CaregiverWAppointments {
-    @Embedded
     public Caregiver caregiver;
 
-    @Relation(parentColumn = "uuid", entityColumn = "uuid")
-    public List<Appointment> appointments;
+    public List<Appointment> appointments = new ArrayList<>();
+
+    public CaregiverWAppointments(Caregiver caregiver) {
+        this.caregiver = caregiver;
+    }
 }
@@ -0,0 +1,23 @@
+package nova.daniel.empatica.model;
+
+import androidx.room.ColumnInfo;
+
+/**
+ * POJO class that represents the workload of a caregiver's uuid, as needed by the auto-fit:
+ * number of appointments in the current week and in the current and past 4 weeks, and the appointments
+ * of the days being scheduled.
+ * Used when fetching results from the repository.
+ */
+public class CaregiverWorkload {
+    public String uuid;
+
+    @ColumnInfo(name = "week_count")
+    public int mWeekCount;
+
+    @ColumnInfo(name = "history_count")
+    public int mHistoryCount;
+
+    // Appointments in the scheduled days, as comma separated "date:room" pairs, null if there are none
+    @ColumnInfo(name = "slots")
+    public String mSlots;
+}
@@ -1,10 +0,0 @@
-package nova.daniel.empatica.model;
-
-/**
- * POJO class that represents the number of appointments for a caregiver's uuid.
- * Used when fetching results from the repository.
- */
-public class CountWork {
-    public String uuid;
-    public Integer counts;
-}
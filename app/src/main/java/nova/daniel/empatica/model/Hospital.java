@@ -11,6 +11,7 @@ import java.util.List;
 
 import nova.daniel.empatica.AutoFitOperationTask;
 import nova.daniel.empatica.R;
+import nova.daniel.empatica.Utils;
 import nova.daniel.empatica.persistence.CaregiverRepository;
 import nova.daniel.empatica.ui.MainActivity;
 import nova.daniel.empatica.viewmodel.AppointmentViewModel;
@@ -25,6 +26,8 @@ public class Hospital implements CaregiverRepository.FetchListener {
     private Date mCurrentDate; // date of the model
     private LiveData<List<Appointment>> mAppointmentLiveData;
     private AppointmentViewModel mAppointmentViewModel; // ViewModel of the Appointments
+    private AutoFitOperationTask.Strategy mAutoFitStrategy = AutoFitOperationTask.Strategy.GREEDY;
+    private List<Date> mAutoFitDays; // Days to schedule in the next auto-fit
 
     public Hospital(Context context, Date date, OnUpdateListener modelUpdateListener) {
         mContext = context;
@@ -67,10 +70,31 @@ public class Hospital implements CaregiverRepository.FetchListener {
      * The repository is initialized with a callback {@link CaregiverRepository.FetchListener},
      * so when all ca
      *
-     * @param date Date
+     * @param date     Date
+     * @param strategy Strategy used to assign the caregivers of each hour
      */
-    public void autoFitCaregiver(Date date) {
+    public void autoFitCaregiver(Date date, AutoFitOperationTask.Strategy strategy) {
+        List<Date> days = new ArrayList<>();
+        days.add(date);
+        autoFitCaregiver(date, days, strategy);
+    }
+
+    /**
+     * Entry point to auto-fit the caregivers for the whole week of the given date.
+     * Caregivers are fetched once, and all days are scheduled by a single {@link AutoFitOperationTask},
+     * keeping the weekly hour limits across days.
+     *
+     * @param date     Date of the week to schedule
+     * @param strategy Strategy used to assign the caregivers of each hour
+     */
+    public void autoFitWeek(Date date, AutoFitOperationTask.Strategy strategy) {
+        autoFitCaregiver(date, Utils.getDaysOfWeek(date), strategy);
+    }
+
+    private void autoFitCaregiver(Date date, List<Date> days, AutoFitOperationTask.Strategy strategy) {
         this.mCurrentDate = date;
+        this.mAutoFitDays = days;
+        this.mAutoFitStrategy = strategy;
         mAppointmentLiveData.removeObservers((MainActivity) mContext);
         mAppointmentLiveData = null;
         CaregiverRepository repository = new CaregiverRepository(mContext, false);
@@ -78,33 +102,11 @@ public class Hospital implements CaregiverRepository.FetchListener {
     }
 
     /**
-     * Initialize each HourSlot model for each hour of the day
+     * Initialize each HourSlot model for each hour of the day, see {@link HourSlotModel#buildDay(List)}.
      * @param appointments List of appointments
      */
     public void initializeSlots(List<Appointment> appointments) {
-        mHourSlotModelList = new ArrayList<>();
-        for (int i = 0; i <= 23; i++) {
-            mHourSlotModelList.add(new HourSlotModel(i + ":00", getAppointmentsByHour(appointments, i)));
-        }
-    }
-
-    /**
-     * Appends all appointments for the given hour to a list and return it. In case no appointments
-     * for that hour exist, then an empty non-null List is returned.
-     * see method initializeSlots.
-     *
-     * @param appointments Appointments
-     * @param hour         Hour of the day
-     * @return List of appointments for the given hour.
-     */
-    private List<Appointment> getAppointmentsByHour(List<Appointment> appointments, int hour){
-        List<Appointment> hourAppointments = new ArrayList<>();
-        if (appointments!=null)
-            for(Appointment appointment : appointments) {
-                if(appointment.getHour() == hour)
-                    hourAppointments.add(appointment);
-            }
-        return hourAppointments;
+        mHourSlotModelList = HourSlotModel.buildDay(appointments);
     }
 
     /**
@@ -136,7 +138,7 @@ public class Hospital implements CaregiverRepository.FetchListener {
      */
     @Override
     public void onCompleted(boolean fetchSuccess) {
-        new AutoFitOperationTask(mContext, mCurrentDate).execute();
+        new AutoFitOperationTask(mContext, mAutoFitDays, mAutoFitStrategy).execute();
     }
 
     /**
@@ -1,5 +1,6 @@
 package nova.daniel.empatica.model;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -7,18 +8,50 @@ import java.util.List;
  */
 public class HourSlotModel {
 
+    private static final int HOURS_PER_DAY = 24;
+
+    private int mHour;  // Hour of the day, unique within a day
     private String mHourLabel;  // Hour label
     private List<Appointment> mAppointmentsList;  // List of appointments for the set mDate
 
     /**
+     * @param hour         Hour of the day, from 0 to 23
      * @param hourLabel    Hour label for the slot, e.g "9:00"
      * @param appointments List of appointments
      */
-    HourSlotModel(String hourLabel, List<Appointment> appointments) {
+    HourSlotModel(int hour, String hourLabel, List<Appointment> appointments) {
+        this.mHour = hour;
         this.mHourLabel = hourLabel;
         mAppointmentsList = appointments;
     }
 
+    /**
+     * Builds the HourSlot model of each hour of a day.
+     * Appointments are bucketed by their hour in a single pass, keeping their order within each hour.
+     * Hours without appointments get an empty non-null List.
+     *
+     * @param appointments Appointments of the day, can be null
+     * @return HourSlot models of the 24 hours, in order
+     */
+    public static List<HourSlotModel> buildDay(List<Appointment> appointments) {
+        List<List<Appointment>> appointmentsByHour = new ArrayList<>(HOURS_PER_DAY);
+        for (int i = 0; i < HOURS_PER_DAY; i++)
+            appointmentsByHour.add(new ArrayList<>());
+
+        if (appointments != null)
+            for (Appointment appointment : appointments)
+                appointmentsByHour.get(appointment.getHour()).add(appointment);
+
+        List<HourSlotModel> slots = new ArrayList<>(HOURS_PER_DAY);
+        for (int i = 0; i < HOURS_PER_DAY; i++)
+            slots.add(new HourSlotModel(i, i + ":00", appointmentsByHour.get(i)));
+        return slots;
+    }
+
+    public int getHour() {
+        return mHour;
+    }
+
     public String getHourLabel() {
         return mHourLabel;
     }
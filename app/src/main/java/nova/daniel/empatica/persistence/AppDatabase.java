@@ -9,18 +9,25 @@ import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import nova.daniel.empatica.model.Appointment;
 import nova.daniel.empatica.model.Caregiver;
+import nova.daniel.empatica.model.CaregiverFts;
+import nova.daniel.empatica.model.CaregiverPage;
 import nova.daniel.empatica.persistence.dao.AppointmentDAO;
 import nova.daniel.empatica.persistence.dao.CaregiverDAO;
+import nova.daniel.empatica.persistence.dao.CaregiverPageDAO;
 
 /**
  * Room class to persist {@link Appointment} and {@link Caregiver} objects into a database.
+ * Schema changes are applied with the migrations below, so saved appointments are kept on upgrades.
+ * There is no destructive fallback, a missing migration fails instead of deleting the appointments.
+ * The schema of each version is exported to app/schemas, and used by the migration tests.
  */
-@Database(entities = {Appointment.class, Caregiver.class}, version = 1,
-        exportSchema = false)
+@Database(entities = {Appointment.class, Caregiver.class, CaregiverFts.class, CaregiverPage.class}, version = 6,
+        exportSchema = true)
 @TypeConverters({Converters.class}) // Converted for the Date attributes
 public abstract class AppDatabase extends RoomDatabase {
 
@@ -28,6 +35,99 @@ public abstract class AppDatabase extends RoomDatabase {
     // DAOs
     public abstract AppointmentDAO appointmentDAO();
     public abstract CaregiverDAO caregiverDAO();
+    public abstract CaregiverPageDAO caregiverPageDAO();
+
+    /**
+     * Version 2: content hash of each caregiver (also in the caregiver columns embedded in appointments),
+     * and sync metadata of each page of caregivers.
+     * Existing caregivers get a hash of 0, so they are written once on the next sync.
+     * The columns of the embedded caregiver are nullable, so is its hash in the Appointment table.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `Caregiver` ADD COLUMN `content_hash` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE `Appointment` ADD COLUMN `content_hash` INTEGER");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `caregiver_page` (`page` INTEGER NOT NULL, " +
+                    "`last_synced` INTEGER NOT NULL, `result_count` INTEGER NOT NULL, " +
+                    "`page_hash` INTEGER NOT NULL, PRIMARY KEY(`page`))");
+        }
+    };
+
+    /**
+     * Version 3: indexes on the appointment date, by caregiver and by room.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_Appointment_uuid_date` " +
+                    "ON `Appointment` (`uuid`, `date`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_Appointment_date_room_number` " +
+                    "ON `Appointment` (`date`, `room_number`)");
+        }
+    };
+
+    /**
+     * Version 4: appointments reference their caregiver by uuid, instead of embedding its columns.
+     * Caregivers only known through their appointments are copied to the Caregiver table first,
+     * so every appointment is kept.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("INSERT OR IGNORE INTO `Caregiver` (`uuid`, `first_name`, `last_name`, `pic_url`, `content_hash`) " +
+                    "SELECT `uuid`, `first_name`, `last_name`, `pic_url`, 0 FROM `Appointment` GROUP BY `uuid`");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `Appointment_new` (" +
+                    "`appointmentId` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `patient_name` TEXT, " +
+                    "`room_number` INTEGER NOT NULL, `uuid` TEXT, `date` INTEGER, " +
+                    "FOREIGN KEY(`uuid`) REFERENCES `Caregiver`(`uuid`) ON UPDATE CASCADE ON DELETE CASCADE )");
+            database.execSQL("INSERT INTO `Appointment_new` (`appointmentId`, `patient_name`, `room_number`, `uuid`, `date`) " +
+                    "SELECT `appointmentId`, `patient_name`, `room_number`, `uuid`, `date` FROM `Appointment`");
+            database.execSQL("DROP TABLE `Appointment`");
+            database.execSQL("ALTER TABLE `Appointment_new` RENAME TO `Appointment`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_Appointment_uuid_date` " +
+                    "ON `Appointment` (`uuid`, `date`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_Appointment_date_room_number` " +
+                    "ON `Appointment` (`date`, `room_number`)");
+        }
+    };
+
+    /**
+     * Version 5: index on the caregiver last name, used to page caregivers in order.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_Caregiver_last_name` " +
+                    "ON `Caregiver` (`last_name`)");
+        }
+    };
+
+    /**
+     * Version 6: full-text index of the caregiver names, with the triggers that keep it in sync with the
+     * Caregiver table, as Room creates them. The index is then built from the existing caregivers.
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `caregiver_fts` " +
+                    "USING FTS4(`first_name` TEXT, `last_name` TEXT, content=`Caregiver`)");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_caregiver_fts_BEFORE_UPDATE " +
+                    "BEFORE UPDATE ON `Caregiver` BEGIN DELETE FROM `caregiver_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_caregiver_fts_BEFORE_DELETE " +
+                    "BEFORE DELETE ON `Caregiver` BEGIN DELETE FROM `caregiver_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_caregiver_fts_AFTER_UPDATE " +
+                    "AFTER UPDATE ON `Caregiver` BEGIN INSERT INTO `caregiver_fts`(`docid`, `first_name`, `last_name`) " +
+                    "VALUES (NEW.`rowid`, NEW.`first_name`, NEW.`last_name`); END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_caregiver_fts_AFTER_INSERT " +
+                    "AFTER INSERT ON `Caregiver` BEGIN INSERT INTO `caregiver_fts`(`docid`, `first_name`, `last_name`) " +
+                    "VALUES (NEW.`rowid`, NEW.`first_name`, NEW.`last_name`); END");
+            database.execSQL("INSERT INTO `caregiver_fts`(`caregiver_fts`) VALUES('rebuild')");
+        }
+    };
+
+    // Every migration, from the first version of the schema
+    static final Migration[] MIGRATIONS = {MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6};
 
     static AppDatabase getInMemoryDatabase(Context context) {
         if (INSTANCE == null) {
@@ -37,7 +137,7 @@ public abstract class AppDatabase extends RoomDatabase {
                                 context.getApplicationContext(),
                                 AppDatabase.class,
                                 "caregivers_db")
-                                .fallbackToDestructiveMigration()
+                                .addMigrations(MIGRATIONS)
                                 .addCallback(dbCallback)
                                 .build();
             }
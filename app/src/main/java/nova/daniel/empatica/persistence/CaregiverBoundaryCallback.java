@@ -0,0 +1,82 @@
+package nova.daniel.empatica.persistence;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.paging.PagedList;
+
+import nova.daniel.empatica.R;
+import nova.daniel.empatica.model.Caregiver;
+import nova.daniel.empatica.persistence.dao.CaregiverPageDAO;
+
+/**
+ * Boundary callback of the paged list of caregivers, that syncs the next page of caregivers from the API
+ * when the list runs out of local caregivers.
+ * <p>
+ * The next page is the one after the last page synced by the {@link CaregiverSyncEngine}. No more pages are
+ * requested once the API returns a partial page, or once api_max_results caregivers have been synced.
+ * A single page is requested at a time. Its caregivers are written to the database, which invalidates the
+ * paged list, so they are loaded like any other local caregiver.
+ * The callback is a singleton shared by every paged list of caregivers, so two screens reaching the end of
+ * their lists still request a single page.
+ */
+public class CaregiverBoundaryCallback extends PagedList.BoundaryCallback<Caregiver> {
+
+    private static CaregiverBoundaryCallback instance = null;
+
+    private final CaregiverPageDAO mPageDAO;
+    private final CaregiverSyncEngine mSyncEngine;
+    private final DatabaseExecutors mExecutors;
+    private final int mResultsPerPage;
+    private final int mMaxPages;
+
+    // Only accessed from the main thread
+    private boolean mLoading = false;
+
+    private CaregiverBoundaryCallback(Context context, CaregiverPageDAO pageDAO, CaregiverSyncEngine syncEngine,
+                                      DatabaseExecutors executors) {
+        mPageDAO = pageDAO;
+        mSyncEngine = syncEngine;
+        mExecutors = executors;
+        mResultsPerPage = context.getResources().getInteger(R.integer.api_results);
+        int maxResults = context.getResources().getInteger(R.integer.api_max_results);
+        mMaxPages = (maxResults + mResultsPerPage - 1) / mResultsPerPage;
+    }
+
+    public static synchronized CaregiverBoundaryCallback getInstance(Context context) {
+        if (instance == null)
+            instance = new CaregiverBoundaryCallback(context,
+                    AppDatabase.getInMemoryDatabase(context).caregiverPageDAO(),
+                    CaregiverSyncEngine.getInstance(context), DatabaseExecutors.getInstance());
+        return instance;
+    }
+
+    @Override
+    public void onZeroItemsLoaded() {
+        syncNextPage();
+    }
+
+    @Override
+    public void onItemAtEndLoaded(@NonNull Caregiver itemAtEnd) {
+        syncNextPage();
+    }
+
+    /**
+     * Syncs the page after the last synced one, unless a page is already being synced or there are no more pages.
+     */
+    private void syncNextPage() {
+        if (mLoading)
+            return;
+        mLoading = true;
+
+        mExecutors.read(mPageDAO::getLastPageSync, last -> {
+            int next = last == null ? 1 : last.page + 1;
+            boolean exhausted = last != null && last.mResultCount < mResultsPerPage;
+            if (exhausted || next > mMaxPages) {
+                mLoading = false;
+                return;
+            }
+            mSyncEngine.sync(new int[]{next}, false, fetchSuccess -> mLoading = false);
+        });
+    }
+}
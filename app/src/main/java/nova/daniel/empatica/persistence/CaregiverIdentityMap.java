@@ -0,0 +1,118 @@
+package nova.daniel.empatica.persistence;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import nova.daniel.empatica.model.Appointment;
+import nova.daniel.empatica.model.Caregiver;
+import nova.daniel.empatica.persistence.dao.CaregiverDAO;
+
+/**
+ * In-memory identity map of the {@link Caregiver}s referenced by {@link Appointment}s.
+ * <p>
+ * Appointments only store the uuid of their caregiver, the map resolves it to a single shared Caregiver instance,
+ * so each caregiver is read from the database once, no matter how many appointments reference it.
+ * The map is cleared whenever the Caregiver table changes, so resolved caregivers are never stale.
+ * Each clear starts a new generation, and caregivers read during an older generation are not added to the map,
+ * as they may have been read before the change.
+ */
+public class CaregiverIdentityMap {
+
+    // SQLite limits the number of bound variables of a query to 999
+    private static final int MAX_IDS_PER_QUERY = 900;
+    // Reads of caregivers repeated when the table changed during the read, before using them without the map
+    private static final int MAX_READS = 3;
+
+    private static CaregiverIdentityMap instance = null;
+
+    private final CaregiverDAO mCaregiverDAO;
+    private final Map<String, Caregiver> mCaregivers = new HashMap<>();
+    private int mGeneration = 0; // Incremented by each clear
+
+    private CaregiverIdentityMap(AppDatabase db) {
+        mCaregiverDAO = db.caregiverDAO();
+        db.getInvalidationTracker().addObserver(new InvalidationTracker.Observer("Caregiver") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                clear();
+            }
+        });
+    }
+
+    static synchronized CaregiverIdentityMap getInstance(AppDatabase db) {
+        if (instance == null)
+            instance = new CaregiverIdentityMap(db);
+        return instance;
+    }
+
+    /**
+     * Synchronously sets the caregiver of each appointment, reading the caregivers that are not in the map yet
+     * with one query. If the Caregiver table changes during the query, the caregivers are read again.
+     * Must not be called on the main thread.
+     *
+     * @param appointments Appointments to resolve
+     * @return The same list of appointments
+     */
+    public List<Appointment> resolve(List<Appointment> appointments) {
+        if (appointments == null)
+            return null;
+
+        for (int read = 1; ; read++) {
+            int generation;
+            Set<String> missing = new LinkedHashSet<>();
+            synchronized (this) {
+                generation = mGeneration;
+                for (Appointment appointment : appointments)
+                    if (appointment.mCaregiverId != null && !mCaregivers.containsKey(appointment.mCaregiverId))
+                        missing.add(appointment.mCaregiverId);
+            }
+
+            List<Caregiver> loaded = load(missing);
+
+            synchronized (this) {
+                if (generation == mGeneration) {
+                    for (Caregiver caregiver : loaded)
+                        if (!mCaregivers.containsKey(caregiver.uuid))
+                            mCaregivers.put(caregiver.uuid, caregiver);
+                    for (Appointment appointment : appointments)
+                        appointment.mCaregiver = mCaregivers.get(appointment.mCaregiverId);
+                    return appointments;
+                }
+                if (read == MAX_READS) {
+                    // The table keeps changing, the last read is used without adding it to the map
+                    Map<String, Caregiver> resolved = new HashMap<>(mCaregivers);
+                    for (Caregiver caregiver : loaded)
+                        resolved.put(caregiver.uuid, caregiver);
+                    for (Appointment appointment : appointments)
+                        appointment.mCaregiver = resolved.get(appointment.mCaregiverId);
+                    return appointments;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the caregivers with the given ids, in chunks of MAX_IDS_PER_QUERY
+     */
+    private List<Caregiver> load(Set<String> caregiverIds) {
+        List<Caregiver> loaded = new ArrayList<>(caregiverIds.size());
+        List<String> ids = new ArrayList<>(caregiverIds);
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_QUERY));
+            loaded.addAll(mCaregiverDAO.loadAllByIdsSync(chunk.toArray(new String[0])));
+        }
+        return loaded;
+    }
+
+    private synchronized void clear() {
+        mCaregivers.clear();
+        mGeneration++;
+    }
+}
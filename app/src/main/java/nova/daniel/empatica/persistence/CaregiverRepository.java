@@ -1,56 +1,121 @@
 package nova.daniel.empatica.persistence;
 
 import android.content.Context;
-import android.os.AsyncTask;
 
 import androidx.lifecycle.LiveData;
+import androidx.paging.DataSource;
+import androidx.paging.LivePagedListBuilder;
+import androidx.paging.PagedList;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import nova.daniel.empatica.R;
-import nova.daniel.empatica.Utils;
-import nova.daniel.empatica.api.CaregiversApi;
 import nova.daniel.empatica.model.Caregiver;
+import nova.daniel.empatica.model.CaregiverAppointmentRow;
 import nova.daniel.empatica.model.CaregiverWAppointments;
-import nova.daniel.empatica.model.CountWork;
+import nova.daniel.empatica.model.CaregiverWorkload;
 import nova.daniel.empatica.persistence.dao.CaregiverDAO;
+import nova.daniel.empatica.persistence.dao.CaregiverPageDAO;
 
 /**
  * Deals with local persistence and remote API calls for {@link Caregiver}s
+ * Asynchronous mutations are run on the writer thread of {@link DatabaseExecutors}.
+ * Caregivers are always served from the local database, and refreshed from the API in the background by
+ * a {@link CaregiverSyncEngine}, which also prefetches the thumbnails of the synced caregivers.
+ * <p>
+ * The list of all caregivers is paged, so only the caregivers near the displayed ones are kept in memory.
+ * When the paged list reaches its end, the next page is synced from the API by a {@link CaregiverBoundaryCallback}.
+ * The sync engine, its write buffer and the boundary callback are shared by every repository, so screens
+ * open at the same time do not sync or write the same pages twice.
+ * Caregivers can be searched by name through the full-text index {@link nova.daniel.empatica.model.CaregiverFts}.
  */
 public class CaregiverRepository {
 
+    // Caregivers loaded per page of the paged list, a few screens worth of rows
+    private static final PagedList.Config PAGED_LIST_CONFIG = new PagedList.Config.Builder()
+            .setPageSize(30)
+            .setPrefetchDistance(30)
+            .setEnablePlaceholders(false)
+            .build();
+
     private Context mContext;
 
     private CaregiverDAO mCaregiverDAO;
     private LiveData<List<Caregiver>> mCaregivers;
+    private DatabaseExecutors mExecutors;
+    private CaregiverPageDAO mCaregiverPageDAO;
+    private CaregiverSyncEngine mSyncEngine;
+    private CaregiverBoundaryCallback mBoundaryCallback;
 
-    private int mResultsToFetch;
     private FetchListener mFetchListener;
 
     /**
      * Constructor for the caregiver repository.
      * @param context Context
-     * @param initialFetch True if the repository fetches a first page of caregivers from the API, false if no initial fetching is done.
+     * @param initialFetch True if the repository syncs the first page of caregivers from the API, if stale, false if no initial fetching is done.
      */
     public CaregiverRepository(Context context, boolean initialFetch) {
         mContext = context;
         AppDatabase db = AppDatabase.getInMemoryDatabase(context);
         mCaregiverDAO = db.caregiverDAO();
-        mResultsToFetch = mContext.getResources().getInteger(R.integer.api_results);
+        mExecutors = DatabaseExecutors.getInstance();
+        mCaregiverPageDAO = db.caregiverPageDAO();
+        mSyncEngine = CaregiverSyncEngine.getInstance(context);
+        mBoundaryCallback = CaregiverBoundaryCallback.getInstance(context);
 
         if (initialFetch)
-            fetchCaregivers(1); // By default, on the first call fetch the first page
+            fetchCaregivers(1); // By default, on the first call sync the first page
     }
 
-    public LiveData<List<Caregiver>> getAll() {
-        mCaregivers = mCaregiverDAO.getAll();
-        return mCaregivers;
+    /**
+     * Returns the caregivers matching a search as a paged list, loaded on the read pool of {@link DatabaseExecutors}.
+     * Without a search, all caregivers are returned, and more caregivers are synced from the API when the end of
+     * the list is reached.
+     *
+     * @param search     Text typed by the user, each of its words must prefix the first or last name of the
+     *                   caregiver. Null or blank to return all caregivers
+     * @param byLastName True to order the caregivers by last name, false to keep the order of the API
+     * @return Paged list of the matching caregivers
+     */
+    public LiveData<PagedList<Caregiver>> getPaged(String search, boolean byLastName) {
+        String query = toMatchQuery(search);
+        DataSource.Factory<Integer, Caregiver> factory;
+        if (query == null)
+            factory = byLastName ? mCaregiverDAO.getAllByLastNamePaged() : mCaregiverDAO.getAllPaged();
+        else
+            factory = byLastName ? mCaregiverDAO.searchByLastNamePaged(query) : mCaregiverDAO.searchPaged(query);
+
+        LivePagedListBuilder<Integer, Caregiver> builder = new LivePagedListBuilder<>(factory, PAGED_LIST_CONFIG)
+                .setFetchExecutor(mExecutors.getReadExecutor());
+        // A search reaching its end does not mean more caregivers are needed from the API
+        if (query == null)
+            builder.setBoundaryCallback(mBoundaryCallback);
+        return builder.build();
+    }
+
+    /**
+     * Converts the text typed by the user into an FTS MATCH query, where each word is a prefix.
+     * Anything other than letters and digits separates words, so the text cannot inject FTS operators.
+     * Names are saved in lower case, so the words are lower cased too.
+     * For example, "Jo sm" becomes "jo* sm*".
+     *
+     * @param search Text typed by the user, can be null
+     * @return MATCH query, or null if the text has no words
+     */
+    static String toMatchQuery(String search) {
+        if (search == null)
+            return null;
+        StringBuilder query = new StringBuilder();
+        for (String word : search.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty())
+                continue;
+            if (query.length() > 0)
+                query.append(' ');
+            query.append(word).append('*');
+        }
+        return query.length() > 0 ? query.toString() : null;
     }
 
     public LiveData<Integer> countAll() {
@@ -84,36 +149,67 @@ public class CaregiverRepository {
         return mCaregiverDAO.loadAllByIdsSync(caregiverIds);
     }
 
-    public List<CaregiverWAppointments> getAllWAppointments() {
-        return mCaregiverDAO.getAllWAppointments();
+    /**
+     * Synchronously gets every caregiver with its appointments in the given epoch time range, in one query.
+     * The caregiver of each appointment is set to the same instance as its group.
+     *
+     * @param start Start epoch time
+     * @param end   End epoch time
+     * @return Caregivers with their appointments in the range, ordered by uuid
+     */
+    public List<CaregiverWAppointments> getWAppointmentsForDate(long start, long end) {
+        List<CaregiverWAppointments> result = new ArrayList<>();
+        CaregiverWAppointments current = null;
+        for (CaregiverAppointmentRow row : mCaregiverDAO.getWAppointmentsForDate(start, end)) {
+            if (current == null || !current.caregiver.uuid.equals(row.caregiver.uuid)) {
+                current = new CaregiverWAppointments(row.caregiver);
+                result.add(current);
+            }
+            if (row.appointment != null) {
+                row.appointment.mCaregiver = current.caregiver;
+                current.appointments.add(row.appointment);
+            }
+        }
+        return result;
     }
 
     /**
-     * Fetches the number of appointments for each caregiver for the last 4 weeks of the given date.
-     * Each entry is represented as a tuple, using {@link CountWork} objects, containing the caregiver ID and appointment count.
+     * Synchronously fetches the workload of every caregiver in a single query, see {@link CaregiverWorkload}.
+     * All ranges are epoch times, with inclusive bounds.
      *
-     * @return List of {@link CountWork} with appointment counts for each caregiver in the repository
+     * @param weekStart    Start of the week counted in week_count
+     * @param weekEnd      End of the week counted in week_count
+     * @param historyStart Start of the range counted in history_count
+     * @param historyEnd   End of the range counted in history_count
+     * @param slotsStart   Start of the range whose appointments are listed in slots
+     * @param slotsEnd     End of the range whose appointments are listed in slots
+     * @return Workload of each caregiver in the repository, including those without appointments
      */
-    public List<CountWork> getByAppointmentCountLastWeeks(Date date) {
-        Date end = Utils.getDayEnd(date);
-        end = Utils.getEndOfWeek(end);
-
-        Date start = Utils.getDayStart(date);
-        start = Utils.goBackWeeks(start, 4); // last four weeks
-        start = Utils.getStartOfWeek(start);
-        return mCaregiverDAO.getByAppointmentCountForDate(start.getTime(), end.getTime());
+    public List<CaregiverWorkload> getWorkloadSync(long weekStart, long weekEnd, long historyStart, long historyEnd,
+                                                   long slotsStart, long slotsEnd) {
+        long rangeStart = Math.min(weekStart, Math.min(historyStart, slotsStart));
+        long rangeEnd = Math.max(weekEnd, Math.max(historyEnd, slotsEnd));
+        return mCaregiverDAO.getWorkloadSync(weekStart, weekEnd, historyStart, historyEnd,
+                slotsStart, slotsEnd, rangeStart, rangeEnd);
     }
-    public void insert(Caregiver caregiver) {
-        new insertAsyncTask(mCaregiverDAO).execute(caregiver);
+    public Future<?> insert(Caregiver caregiver) {
+        return mExecutors.write(() -> mCaregiverDAO.insert(caregiver));
     }
 
-    private void deleteAll() {
-        new deleteAllAsyncTask(mCaregiverDAO).execute();
+    private Future<?> deleteAll() {
+        // Pages are no longer synced once their caregivers are gone
+        return mExecutors.write(() -> {
+            mCaregiverDAO.deleteAll();
+            mCaregiverPageDAO.deleteAll();
+        });
     }
 
     /**
-     * Fetches all the caregivers from the API.
-     * As a default it fetches 100, this value is set in the integers resource file, under api_max_results.
+     * Syncs all the caregivers from the API.
+     * As a default it syncs 100, this value is set in the integers resource file, under api_max_results.
+     * <p/>
+     * The caregivers are synced in pages of api_results, only pages older than sync_stale_minutes are fetched,
+     * see {@link CaregiverSyncEngine}. Once all fetched caregivers are saved, the listener is called.
      *
      * @param listener Listener implementation when the fetch is complete.
      */
@@ -121,60 +217,26 @@ public class CaregiverRepository {
         mFetchListener = listener;
         int maxResults = mContext.getResources().getInteger(R.integer.api_max_results);
         int resultsPerCall = mContext.getResources().getInteger(R.integer.api_results);
+        int numPages = (maxResults + resultsPerCall - 1) / resultsPerCall;
 
-        mResultsToFetch = maxResults;
-        fetchCaregivers(1);
-        mResultsToFetch = resultsPerCall;
+        int[] pages = new int[numPages];
+        for (int i = 0; i < numPages; i++)
+            pages[i] = i + 1;
+        mSyncEngine.sync(pages, false, mFetchListener);
     }
 
     /**
-     * Fetch caregivers from the API and update the database,
+     * Sync a page of caregivers from the API and update the database if the page is stale,
      * if API is not available only the local db is used.
+     * Changed caregivers are written in batches through a {@link CaregiverWriteBuffer}.
      * <p/>
-     * Once the fetch is completed, if set, the {@link FetchListener} callback implementation is called.
+     * Once the sync is completed and the caregivers are saved, if set, the {@link FetchListener} callback
+     * implementation is called.
      */
     public void fetchCaregivers(int page){
-        CaregiversApi.getInstance(mContext);
-        CaregiversApi.fetchCaregivers(page, mResultsToFetch, new APICallbackListener() {
-            @Override
-            public void resultCallback(JSONObject response) {
-
-                try {
-                    JSONArray results = response.getJSONArray("results");
-
-                    for(int i = 0; i < results.length(); i++){
-                        JSONObject nameJSON = results.getJSONObject(i).getJSONObject("name");
-                        String firstName =  nameJSON.getString("first");
-                        String lastName =  nameJSON.getString("last");
-
-                        JSONObject picJSON = results.getJSONObject(i).getJSONObject("picture");
-                        String picUrl =  picJSON.getString("thumbnail");
-
-                        JSONObject uuidJSON = results.getJSONObject(i).getJSONObject("login");
-                        String uuid =  uuidJSON.getString("uuid");
-
-                        Caregiver newCaregiver = new Caregiver();
-                        newCaregiver.uuid = uuid;
-                        newCaregiver.mFirstName = firstName;
-                        newCaregiver.mLastName = lastName;
-                        newCaregiver.mPictureURL = picUrl;
-
-                        insert(newCaregiver);
-                    }
-
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
-                if (mFetchListener != null)
-                    mFetchListener.onCompleted(true);
-            }
-
-            @Override
-            public void resultError() {
-                System.out.println("CaregiversRepository: Error loading caregivers form API, using local database");
-                if (mFetchListener != null)
-                    mFetchListener.onCompleted(false);
-            }
+        mSyncEngine.sync(new int[]{page}, false, fetchSuccess -> {
+            if (mFetchListener != null)
+                mFetchListener.onCompleted(fetchSuccess);
         });
     }
 
@@ -184,7 +246,7 @@ public class CaregiverRepository {
      * Listeners interfaces when the results of the Volley calls for the API arrive.
      */
     public interface APICallbackListener {
-        void resultCallback(JSONObject response);
+        void resultCallback(List<Caregiver> caregivers);
 
         void resultError();
     }
@@ -197,39 +259,4 @@ public class CaregiverRepository {
     public interface FetchListener {
         void onCompleted(boolean fetchSuccess);
     }
-
-    /**
-     * Async task to insert caregivers into the database
-     */
-    private static class insertAsyncTask extends AsyncTask<Caregiver, Void, Void> {
-        private CaregiverDAO mAsyncTaskDao;
-
-        insertAsyncTask(CaregiverDAO dao) {
-            mAsyncTaskDao = dao;
-        }
-
-        @Override
-        protected Void doInBackground(final Caregiver... params) {
-            mAsyncTaskDao.insert(params[0]);
-            return null;
-        }
-    }
-
-    /**
-     * Async Task to delete all caregivers from the database
-     */
-    private static class deleteAllAsyncTask extends AsyncTask<Void, Void, Void> {
-
-        private CaregiverDAO mAsyncTaskDao;
-
-        deleteAllAsyncTask(CaregiverDAO dao) {
-            mAsyncTaskDao = dao;
-        }
-
-        @Override
-        protected Void doInBackground(Void... voids) {
-            mAsyncTaskDao.deleteAll();
-            return null;
-        }
-    }
 }
@@ -0,0 +1,281 @@
+package nova.daniel.empatica.persistence;
+
+import android.content.Context;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import nova.daniel.empatica.R;
+import nova.daniel.empatica.api.CaregiversApi;
+import nova.daniel.empatica.api.PagedCaregiverFetcher;
+import nova.daniel.empatica.api.ThumbnailPrefetcher;
+import nova.daniel.empatica.model.Caregiver;
+import nova.daniel.empatica.model.CaregiverPage;
+import nova.daniel.empatica.persistence.dao.CaregiverPageDAO;
+
+/**
+ * Offline-first sync of the caregivers fetched from the API.
+ * <p>
+ * Caregivers are always read from the local database, the sync only refreshes it in the background.
+ * For each page of the API a {@link CaregiverPage} stores when it was last synced and a hash of its content:
+ * - Pages synced less than sync_stale_minutes ago are not fetched again, unless the sync is forced.
+ * Stale and forced pages bypass the HTTP cache of {@link CaregiversApi}, and are revalidated with the server.
+ * - Fetched pages with the same hash as the stored one only update their sync time.
+ * - Otherwise the caregivers of the page go through the {@link CaregiverWriteBuffer}, which skips the
+ * caregivers whose content hash did not change.
+ * <p>
+ * The metadata of a page is written after its caregivers on the writer thread of {@link DatabaseExecutors},
+ * so a page is never marked as synced before its caregivers are saved.
+ * A page whose caregivers or metadata could not be saved completes its syncs as failed, as does a sync whose
+ * stored metadata could not be read, so the callers fall back to the local database.
+ * <p>
+ * The thumbnails of the caregivers of changed pages are prefetched in the background by a {@link ThumbnailPrefetcher},
+ * so they are already cached when the caregivers are first displayed.
+ * <p>
+ * The engine is a singleton shared by every repository. Pages already being fetched are not fetched again by
+ * a concurrent sync, which waits for them instead.
+ */
+public class CaregiverSyncEngine {
+
+    private static CaregiverSyncEngine instance = null;
+
+    private final CaregiverPageDAO mPageDAO;
+    private final CaregiverWriteBuffer mWriteBuffer;
+    private final DatabaseExecutors mExecutors;
+    private final ThumbnailPrefetcher mThumbnailPrefetcher;
+    private final PagedCaregiverFetcher.PageSource mSource;
+
+    private final long mStaleAfterMs;
+    private final int mResultsPerPage;
+    private final int mConcurrentPages;
+    private final int mPageRetries;
+
+    // Syncs waiting for each page being fetched. Only accessed from the main thread
+    private final Map<Integer, List<PendingSync>> mInFlight = new HashMap<>();
+    // Fetched pages that could not be saved, until their syncs complete. Only accessed from the main thread
+    private final Set<Integer> mFailedPages = new HashSet<>();
+
+    /**
+     * @param source Source of the pages, must call back on the main thread
+     */
+    @VisibleForTesting
+    CaregiverSyncEngine(Context context, CaregiverPageDAO pageDAO, CaregiverWriteBuffer writeBuffer,
+                        DatabaseExecutors executors, ThumbnailPrefetcher thumbnailPrefetcher,
+                        PagedCaregiverFetcher.PageSource source) {
+        mPageDAO = pageDAO;
+        mWriteBuffer = writeBuffer;
+        mExecutors = executors;
+        mThumbnailPrefetcher = thumbnailPrefetcher;
+        mSource = source;
+        mStaleAfterMs = context.getResources().getInteger(R.integer.sync_stale_minutes) * 60 * 1000L;
+        mResultsPerPage = context.getResources().getInteger(R.integer.api_results);
+        mConcurrentPages = context.getResources().getInteger(R.integer.api_concurrent_pages);
+        mPageRetries = context.getResources().getInteger(R.integer.api_page_retries);
+    }
+
+    public static synchronized CaregiverSyncEngine getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new CaregiverSyncEngine(appContext,
+                    AppDatabase.getInMemoryDatabase(appContext).caregiverPageDAO(),
+                    CaregiverWriteBuffer.getInstance(appContext), DatabaseExecutors.getInstance(),
+                    ThumbnailPrefetcher.getInstance(appContext),
+                    // Only stale or forced pages are fetched, so a page still fresh in the HTTP cache is revalidated
+                    (page, results, listener) -> {
+                        CaregiversApi.getInstance(appContext);
+                        CaregiversApi.fetchCaregivers(page, results, true, listener);
+                    });
+        }
+        return instance;
+    }
+
+    /**
+     * Syncs the given pages of caregivers. Must be called from the main thread.
+     * The stored metadata of the pages is read off the main thread, and only the stale pages are fetched,
+     * see {@link PagedCaregiverFetcher}.
+     *
+     * @param pages    Page numbers to sync, 1-based
+     * @param force    True to fetch every page, regardless of when it was last synced
+     * @param listener Called on the main thread once the fetched caregivers are saved, with true if every stale
+     *                 page was fetched and saved. Can be null.
+     */
+    public void sync(int[] pages, boolean force, CaregiverRepository.FetchListener listener) {
+        mExecutors.read(() -> mPageDAO.getPagesSync(pages),
+                new DatabaseExecutors.ResultCallback<List<CaregiverPage>>() {
+                    @Override
+                    public void onResult(List<CaregiverPage> stored) {
+                        syncStale(pages, stored, force, listener);
+                    }
+
+                    @Override
+                    public void onError(Exception error) {
+                        System.out.println("CaregiverSyncEngine: Error reading synced pages, using local database, "
+                                + error);
+                        if (listener != null)
+                            listener.onCompleted(false);
+                    }
+                });
+    }
+
+    /**
+     * Fetches the pages that are stale according to their stored metadata, or waits for them if they are already
+     * being fetched.
+     */
+    private void syncStale(int[] pages, List<CaregiverPage> stored, boolean force,
+                           CaregiverRepository.FetchListener listener) {
+        Map<Integer, CaregiverPage> storedPages = new HashMap<>();
+        for (CaregiverPage page : stored)
+            storedPages.put(page.page, page);
+
+        long now = System.currentTimeMillis();
+        List<Integer> stalePages = new ArrayList<>();
+        for (int page : pages) {
+            CaregiverPage state = storedPages.get(page);
+            if (force || state == null || now - state.mLastSynced >= mStaleAfterMs)
+                stalePages.add(page);
+        }
+
+        if (stalePages.isEmpty()) {
+            if (listener != null)
+                listener.onCompleted(true);
+            return;
+        }
+
+        // Pages already being fetched by another sync are only waited for
+        PendingSync pending = new PendingSync(stalePages.size(), listener);
+        List<Integer> newPages = new ArrayList<>();
+        for (int page : stalePages) {
+            List<PendingSync> waiting = mInFlight.get(page);
+            if (waiting == null) {
+                waiting = new ArrayList<>();
+                mInFlight.put(page, waiting);
+                newPages.add(page);
+            }
+            waiting.add(pending);
+        }
+        if (!newPages.isEmpty())
+            fetch(newPages, storedPages);
+    }
+
+    private void fetch(List<Integer> stalePages, Map<Integer, CaregiverPage> storedPages) {
+        int[] pageNumbers = new int[stalePages.size()];
+        for (int i = 0; i < pageNumbers.length; i++)
+            pageNumbers[i] = stalePages.get(i);
+
+        new PagedCaregiverFetcher(pageNumbers, mResultsPerPage, mConcurrentPages, mPageRetries, mSource,
+                new PagedCaregiverFetcher.PagesListener() {
+                    @Override
+                    public void onPageFetched(int page, List<Caregiver> caregivers) {
+                        applyPage(page, caregivers, storedPages.get(page));
+                    }
+
+                    @Override
+                    public void onPagesFetched(List<Caregiver> caregivers, boolean allSucceeded) {
+                        if (!allSucceeded)
+                            System.out.println("CaregiverSyncEngine: Error loading caregivers form API, using local database");
+
+                        // Queued after the writes of every page, so the listeners are called once all are saved
+                        mWriteBuffer.flush(null, new DatabaseExecutors.ResultCallback<Void>() {
+                            @Override
+                            public void onResult(Void result) {
+                                complete(pageNumbers, allSucceeded);
+                            }
+
+                            @Override
+                            public void onError(Exception error) {
+                                complete(pageNumbers, false);
+                            }
+                        });
+                    }
+                }).start();
+    }
+
+    /**
+     * Completes the syncs waiting for the given pages, which can be fetched again by later syncs.
+     *
+     * @param pages     Fetched page numbers
+     * @param succeeded False if a page could not be fetched or saved
+     */
+    private void complete(int[] pages, boolean succeeded) {
+        for (int page : pages) {
+            boolean saved = !mFailedPages.remove(page);
+            for (PendingSync pending : mInFlight.remove(page))
+                pending.onPageSynced(succeeded && saved);
+        }
+    }
+
+    /**
+     * Saves the caregivers of a fetched page, if the page changed, followed by its new sync metadata.
+     *
+     * @param page       Page number
+     * @param caregivers Caregivers of the page
+     * @param previous   Stored metadata of the page, null if it was never synced
+     */
+    private void applyPage(int page, List<Caregiver> caregivers, CaregiverPage previous) {
+        CaregiverPage state = new CaregiverPage();
+        state.page = page;
+        state.mLastSynced = System.currentTimeMillis();
+        state.mResultCount = caregivers.size();
+        state.mPageHash = computePageHash(caregivers);
+
+        DatabaseExecutors.ResultCallback<Void> onSaved = new DatabaseExecutors.ResultCallback<Void>() {
+            @Override
+            public void onResult(Void result) {
+            }
+
+            @Override
+            public void onError(Exception error) {
+                mFailedPages.add(page);
+            }
+        };
+        if (previous == null || previous.mPageHash != state.mPageHash) {
+            for (Caregiver caregiver : caregivers)
+                mWriteBuffer.add(caregiver);
+            // The metadata is only written if the caregivers were saved
+            mWriteBuffer.flush(() -> mPageDAO.insert(state), onSaved);
+            mThumbnailPrefetcher.prefetch(caregivers);
+        } else {
+            mExecutors.write(() -> {
+                mPageDAO.insert(state);
+                return null;
+            }, onSaved);
+        }
+    }
+
+    /**
+     * Combines the content hash of every caregiver of a page, in order.
+     */
+    private static long computePageHash(List<Caregiver> caregivers) {
+        long hash = caregivers.size();
+        for (Caregiver caregiver : caregivers)
+            hash = 31 * hash + caregiver.computeContentHash();
+        return hash;
+    }
+
+    /**
+     * Sync waiting for its stale pages, possibly fetched by other syncs, before calling its listener.
+     * Only accessed from the main thread.
+     */
+    private static class PendingSync {
+        private final CaregiverRepository.FetchListener mListener;
+        private int mRemainingPages;
+        private boolean mAllSucceeded = true;
+
+        PendingSync(int pages, CaregiverRepository.FetchListener listener) {
+            mRemainingPages = pages;
+            mListener = listener;
+        }
+
+        void onPageSynced(boolean succeeded) {
+            mAllSucceeded &= succeeded;
+            if (--mRemainingPages == 0 && mListener != null)
+                mListener.onCompleted(mAllSucceeded);
+        }
+    }
+}
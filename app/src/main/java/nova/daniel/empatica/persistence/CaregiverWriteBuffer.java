@@ -0,0 +1,123 @@
+package nova.daniel.empatica.persistence;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import nova.daniel.empatica.model.Caregiver;
+import nova.daniel.empatica.model.CaregiverHash;
+import nova.daniel.empatica.persistence.dao.CaregiverDAO;
+
+/**
+ * Write-behind buffer for {@link Caregiver} inserts.
+ * <p>
+ * Caregivers added to the buffer are kept in memory, and written to the database in batches through
+ * {@link CaregiverDAO#insert(Caregiver...)}, each batch in a single transaction on the writer thread of
+ * {@link DatabaseExecutors}.
+ * A batch is written when BATCH_SIZE caregivers are pending, when FLUSH_DELAY_MS have passed since the first
+ * pending caregiver was added, or when {@link #flush(Runnable, DatabaseExecutors.ResultCallback)} is called.
+ * Adding a caregiver that is already pending replaces it, so only its latest version is written.
+ * <p>
+ * Before writing a batch, the content hash of each caregiver is compared with the stored one, and caregivers
+ * that did not change are skipped, see {@link Caregiver#computeContentHash()}.
+ * <p>
+ * The buffer is a singleton, so the caregivers added by every repository are batched together.
+ */
+public class CaregiverWriteBuffer {
+
+    private static final int BATCH_SIZE = 50;
+    private static final long FLUSH_DELAY_MS = 500;
+
+    private static CaregiverWriteBuffer instance = null;
+
+    private final CaregiverDAO mCaregiverDAO;
+    private final DatabaseExecutors mExecutors;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mDelayedFlush = () -> flush(null, null);
+
+    private Map<String, Caregiver> mPending = new LinkedHashMap<>();
+
+    @VisibleForTesting
+    CaregiverWriteBuffer(CaregiverDAO caregiverDAO, DatabaseExecutors executors) {
+        mCaregiverDAO = caregiverDAO;
+        mExecutors = executors;
+    }
+
+    public static synchronized CaregiverWriteBuffer getInstance(Context context) {
+        if (instance == null)
+            instance = new CaregiverWriteBuffer(AppDatabase.getInMemoryDatabase(context).caregiverDAO(),
+                    DatabaseExecutors.getInstance());
+        return instance;
+    }
+
+    /**
+     * Adds a caregiver to be written, replacing any pending caregiver with the same uuid.
+     *
+     * @param caregiver Caregiver to insert
+     */
+    public synchronized void add(Caregiver caregiver) {
+        if (mPending.isEmpty())
+            mHandler.postDelayed(mDelayedFlush, FLUSH_DELAY_MS);
+        caregiver.mContentHash = caregiver.computeContentHash();
+        mPending.put(caregiver.uuid, caregiver);
+        if (mPending.size() >= BATCH_SIZE)
+            flush(null, null);
+    }
+
+    /**
+     * Writes all pending caregivers in a single batch.
+     *
+     * @param then      Write run on the writer thread after the batch, only if the batch was saved. Can be null.
+     * @param onDurable Called on the main thread once the batch and the write after it have been saved, or with
+     *                  the error if they failed. Called even if there are no pending caregivers. Can be null.
+     * @return Future that completes once the batch has been saved
+     */
+    public synchronized Future<?> flush(Runnable then, DatabaseExecutors.ResultCallback<Void> onDurable) {
+        mHandler.removeCallbacks(mDelayedFlush);
+        Caregiver[] batch = mPending.values().toArray(new Caregiver[0]);
+        mPending = new LinkedHashMap<>();
+
+        return mExecutors.write(() -> {
+            Caregiver[] changed = filterChanged(batch);
+            if (changed.length > 0)
+                mCaregiverDAO.insert(changed);
+            if (then != null)
+                then.run();
+            return null;
+        }, onDurable);
+    }
+
+    /**
+     * Returns the caregivers of the batch that are new or whose content hash differs from the stored one.
+     * Runs on the writer thread, so no other write can happen between the check and the insert.
+     */
+    private Caregiver[] filterChanged(Caregiver[] batch) {
+        if (batch.length == 0)
+            return batch;
+
+        String[] ids = new String[batch.length];
+        for (int i = 0; i < batch.length; i++)
+            ids[i] = batch[i].uuid;
+
+        Map<String, Long> stored = new HashMap<>();
+        for (CaregiverHash hash : mCaregiverDAO.getContentHashesSync(ids))
+            stored.put(hash.uuid, hash.mContentHash);
+
+        List<Caregiver> changed = new ArrayList<>(batch.length);
+        for (Caregiver caregiver : batch) {
+            Long storedHash = stored.get(caregiver.uuid);
+            if (storedHash == null || storedHash != caregiver.mContentHash)
+                changed.add(caregiver);
+        }
+        return changed.toArray(new Caregiver[0]);
+    }
+}
@@ -0,0 +1,206 @@
+package nova.daniel.empatica.persistence;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors used by the repositories to access the database off the main thread.
+ * <p>
+ * All mutations (inserts, updates, deletes) go through a single writer thread, so they are applied in order
+ * and never compete for the SQLite write lock. Reads run on a separate small pool.
+ * These executors are independent of the AsyncTask serial executor, so user edits are not queued behind
+ * a running {@link nova.daniel.empatica.AutoFitOperationTask}.
+ * <p>
+ * Failed mutations are logged on the writer thread, so errors such as constraint violations are not lost
+ * with the futures nobody reads, and the futures still complete with the error.
+ * The number of queued tasks of each executor can be read for monitoring.
+ */
+public class DatabaseExecutors {
+
+    private static final int READ_THREADS = 2;
+
+    private static DatabaseExecutors instance = null;
+
+    private final ThreadPoolExecutor mWriteExecutor;
+    private final ThreadPoolExecutor mReadExecutor;
+    private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
+
+    private DatabaseExecutors() {
+        mWriteExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory("db-writer"));
+        mReadExecutor = new ThreadPoolExecutor(READ_THREADS, READ_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory("db-reader"));
+    }
+
+    public static synchronized DatabaseExecutors getInstance() {
+        if (instance == null)
+            instance = new DatabaseExecutors();
+        return instance;
+    }
+
+    /**
+     * Queues a database mutation on the writer thread.
+     *
+     * @param task Mutation to run
+     * @return Future that completes once the mutation has been applied
+     */
+    public Future<?> write(Runnable task) {
+        return mWriteExecutor.submit(() -> runLogged(task));
+    }
+
+    /**
+     * Queues a database mutation on the writer thread, and calls back on the main thread once it is applied.
+     *
+     * @param task     Mutation to run
+     * @param callback Called on the main thread after the mutation, can be null
+     * @return Future that completes once the mutation has been applied
+     */
+    public Future<?> write(Runnable task, Runnable callback) {
+        return mWriteExecutor.submit(() -> {
+            runLogged(task);
+            if (callback != null)
+                mMainThreadHandler.post(callback);
+        });
+    }
+
+    /**
+     * Queues a database mutation that returns a result on the writer thread, and delivers the result on the
+     * main thread. If the mutation fails, the error is delivered instead.
+     *
+     * @param task     Mutation to run
+     * @param callback Receives the result or the error on the main thread, can be null
+     * @param <T>      Type of the result
+     * @return Future that completes once the mutation has been applied
+     */
+    public <T> Future<?> write(Callable<T> task, ResultCallback<T> callback) {
+        return mWriteExecutor.submit(() -> {
+            T result;
+            try {
+                result = task.call();
+            } catch (Exception e) {
+                System.out.println("DatabaseExecutors: Error writing to the database, " + e);
+                if (callback != null)
+                    mMainThreadHandler.post(() -> callback.onError(e));
+                throw e;
+            }
+            if (callback != null)
+                mMainThreadHandler.post(() -> callback.onResult(result));
+            return null;
+        });
+    }
+
+    /**
+     * Runs a query on the read pool.
+     *
+     * @param query Query to run
+     * @param <T>   Type of the result
+     * @return Future with the result of the query
+     */
+    public <T> Future<T> read(Callable<T> query) {
+        return mReadExecutor.submit(query);
+    }
+
+    /**
+     * Runs a query on the read pool, and delivers the result on the main thread.
+     * If the query fails, the error is delivered instead.
+     *
+     * @param query    Query to run
+     * @param callback Receives the result or the error on the main thread
+     * @param <T>      Type of the result
+     * @return Future that completes once the query has run
+     */
+    public <T> Future<?> read(Callable<T> query, ResultCallback<T> callback) {
+        return mReadExecutor.submit(() -> {
+            T result;
+            try {
+                result = query.call();
+            } catch (Exception e) {
+                mMainThreadHandler.post(() -> callback.onError(e));
+                throw e;
+            }
+            mMainThreadHandler.post(() -> callback.onResult(result));
+            return null;
+        });
+    }
+
+    /**
+     * Runs a mutation, logging and rethrowing any error so it also completes the future of the task.
+     */
+    private static void runLogged(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            System.out.println("DatabaseExecutors: Error writing to the database, " + e);
+            e.printStackTrace();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Executor of the read pool, for components that schedule their own queries, such as paged lists
+     */
+    public Executor getReadExecutor() {
+        return mReadExecutor;
+    }
+
+    /**
+     * @return Number of mutations waiting for the writer thread
+     */
+    public int getWriteQueueDepth() {
+        return mWriteExecutor.getQueue().size();
+    }
+
+    /**
+     * @return Number of queries waiting for a reader thread
+     */
+    public int getReadQueueDepth() {
+        return mReadExecutor.getQueue().size();
+    }
+
+    /**
+     * Callback for results of tasks run on the executors.
+     * Exactly one of the methods is called, on the main thread.
+     *
+     * @param <T> Type of the result
+     */
+    public interface ResultCallback<T> {
+        void onResult(T result);
+
+        /**
+         * Called instead of {@link #onResult(Object)} when the task fails. By default the error is only logged.
+         *
+         * @param error Error thrown by the task
+         */
+        default void onError(Exception error) {
+            System.out.println("DatabaseExecutors: Task failed, " + error);
+        }
+    }
+
+    /**
+     * Thread factory that names the threads of each executor, to make them easy to find when debugging.
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        NamedThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, mName + "-" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -6,11 +6,13 @@ import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 
 import java.util.List;
 
 import nova.daniel.empatica.model.Appointment;
+import nova.daniel.empatica.model.AppointmentConflict;
 
 /**
  * Direct access object for {@link Appointment} entities
@@ -21,6 +23,10 @@ public interface AppointmentDAO {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insertAll(Appointment... appointments);
 
+    // Bulk insert, Room runs the whole list in a single transaction
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertBatch(List<Appointment> appointments);
+
     @Update
     void update(Appointment... appointments);
 
@@ -48,32 +54,42 @@ public interface AppointmentDAO {
     @Query("SELECT room_number FROM Appointment WHERE date BETWEEN :start AND :end")
     List<Integer> getRoomsByDateSync(long start, long end);
 
-    @Query("SELECT room_number FROM Appointment WHERE uuid=:caregiverId AND date BETWEEN :start AND :end")
-    List<Integer> getRoomsForCaregiverByDate(long start, long end, String caregiverId);
-
-    //    Get caregivers for appointments in a given date range, with the option to exclude certain ids
-    @Query("SELECT uuid FROM Appointment WHERE " +
-            "appointmentId NOT IN (:appointmentIds) " +
-            "AND  date BETWEEN :start AND :end")
-    LiveData<List<String>> getCaregiversByDate(long start, long end, int[] appointmentIds);
-
-    @Query("SELECT uuid FROM Appointment " +
-            "WHERE date BETWEEN :start AND :end")
-    List<String> getCaregiversByDateSync(long start, long end);
-
-    @Query("SELECT COUNT(*) FROM Appointment WHERE uuid=:caregiverId AND date BETWEEN :start AND :end")
-    LiveData<Integer> countByCaregiverForDate(long start, long end, String caregiverId);
-
-    @Query("SELECT COUNT(*) FROM Appointment WHERE uuid=:caregiverId AND date BETWEEN :start AND :end")
-    int countByCaregiverForDateSync(long start, long end, String caregiverId);
-
-    @Query("SELECT MIN(counts) " +
-            "FROM(" +
-            "SELECT uuid, COUNT(uuid) as counts " +
-            "FROM Appointment " +
-            "WHERE date BETWEEN :start AND :end " +
-            "GROUP BY uuid " +
-            "ORDER BY COUNT(*))")
-    int getMinNumAppointments(long start, long end);
+    // Conflicts of an appointment, in one statement served by the (uuid, date) and (date, room_number) indices
+    @Query("SELECT " +
+            "EXISTS(SELECT 1 FROM Appointment WHERE uuid = :caregiverId AND appointmentId != :appointmentId " +
+            "AND date BETWEEN :hourStart AND :hourEnd) AS hour_busy, " +
+            "(SELECT COUNT(*) FROM Appointment WHERE uuid = :caregiverId AND appointmentId != :appointmentId " +
+            "AND date BETWEEN :weekStart AND :weekEnd) AS week_count, " +
+            "EXISTS(SELECT 1 FROM Appointment WHERE room_number = :room AND appointmentId != :appointmentId " +
+            "AND date BETWEEN :hourStart AND :hourEnd) AS room_taken")
+    AppointmentConflict getConflictSync(int appointmentId, String caregiverId, int room, long hourStart, long hourEnd,
+                                        long weekStart, long weekEnd);
+
+    /**
+     * Checks the conflicts of an appointment, and saves it if there are none, in a single transaction.
+     * No other appointment can be saved between the check and the save, so two concurrent saves cannot
+     * both pass the check.
+     *
+     * @param appointment  Appointment to insert, or to update if its id is set
+     * @param hourStart    Start of the hour of the appointment
+     * @param hourEnd      End of the hour of the appointment
+     * @param weekStart    Start of the week of the appointment
+     * @param weekEnd      End of the week of the appointment
+     * @param maxWeekSlots Maximum number of appointments of a caregiver per week
+     * @return Conflicts found, the appointment was saved only if there are none
+     */
+    @Transaction
+    default AppointmentConflict saveIfNoConflict(Appointment appointment, long hourStart, long hourEnd,
+                                                 long weekStart, long weekEnd, int maxWeekSlots) {
+        AppointmentConflict conflict = getConflictSync(appointment.appointmentId, appointment.mCaregiverId,
+                appointment.mRoom, hourStart, hourEnd, weekStart, weekEnd);
+        if (conflict.isNone(maxWeekSlots)) {
+            if (appointment.appointmentId != 0)
+                update(appointment);
+            else
+                insertAll(appointment);
+        }
+        return conflict;
+    }
 
 }
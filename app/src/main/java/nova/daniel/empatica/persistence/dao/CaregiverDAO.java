@@ -1,6 +1,7 @@
 package nova.daniel.empatica.persistence.dao;
 
 import androidx.lifecycle.LiveData;
+import androidx.paging.DataSource;
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
@@ -8,11 +9,13 @@ import androidx.room.Query;
 import androidx.room.Transaction;
 import androidx.room.Update;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import nova.daniel.empatica.model.Caregiver;
-import nova.daniel.empatica.model.CaregiverWAppointments;
-import nova.daniel.empatica.model.CountWork;
+import nova.daniel.empatica.model.CaregiverAppointmentRow;
+import nova.daniel.empatica.model.CaregiverHash;
+import nova.daniel.empatica.model.CaregiverWorkload;
 
 /**
  * Direct access object for {@link Caregiver} entities
@@ -20,8 +23,22 @@ import nova.daniel.empatica.model.CountWork;
 @Dao
 public interface CaregiverDAO {
 
-    @Query("SELECT * FROM Caregiver")
-    LiveData<List<Caregiver>> getAll();
+    // Caregivers in the order they were first fetched, one page at a time
+    @Query("SELECT * FROM Caregiver ORDER BY rowid")
+    DataSource.Factory<Integer, Caregiver> getAllPaged();
+
+    // Caregivers by last name, read in order from the last_name index
+    @Query("SELECT * FROM Caregiver ORDER BY last_name")
+    DataSource.Factory<Integer, Caregiver> getAllByLastNamePaged();
+
+    // Caregivers whose first or last name match a full-text query, see CaregiverRepository#toMatchQuery
+    @Query("SELECT Caregiver.* FROM Caregiver JOIN caregiver_fts ON Caregiver.rowid = caregiver_fts.docid " +
+            "WHERE caregiver_fts MATCH :query ORDER BY Caregiver.rowid")
+    DataSource.Factory<Integer, Caregiver> searchPaged(String query);
+
+    @Query("SELECT Caregiver.* FROM Caregiver JOIN caregiver_fts ON Caregiver.rowid = caregiver_fts.docid " +
+            "WHERE caregiver_fts MATCH :query ORDER BY Caregiver.last_name")
+    DataSource.Factory<Integer, Caregiver> searchByLastNamePaged(String query);
 
     @Query("SELECT COUNT(*) FROM Caregiver")
     LiveData<Integer> countAll();
@@ -38,32 +55,55 @@ public interface CaregiverDAO {
     @Query("SELECT * FROM Caregiver WHERE uuid IN (:caregiverIds)")
     List<Caregiver> loadAllByIdsSync(String[] caregiverIds);
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insert(Caregiver... caregiverEntities);
+    @Query("SELECT uuid, content_hash FROM Caregiver WHERE uuid IN (:caregiverIds)")
+    List<CaregiverHash> getContentHashesSync(String[] caregiverIds);
+
+    // Replacing a caregiver would delete it first, cascading to its appointments, so inserts never replace
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long[] insertIgnore(Caregiver... caregiverEntities);
 
     @Update
     void updateCaregivers(Caregiver... caregiverEntities);
 
+    /**
+     * Inserts new caregivers and updates existing ones, in a single transaction.
+     *
+     * @param caregiverEntities Caregivers to save
+     */
+    @Transaction
+    default void insert(Caregiver... caregiverEntities) {
+        long[] rowIds = insertIgnore(caregiverEntities);
+        List<Caregiver> existing = new ArrayList<>();
+        for (int i = 0; i < rowIds.length; i++)
+            if (rowIds[i] == -1)
+                existing.add(caregiverEntities[i]);
+        if (!existing.isEmpty())
+            updateCaregivers(existing.toArray(new Caregiver[0]));
+    }
+
     @Query("DELETE FROM Caregiver")
     void deleteAll();
 
-    @Transaction
-    @Query("SELECT DISTINCT caregiver.* " +
-            "FROM caregiver, appointment ")
-    List<CaregiverWAppointments> getAllWAppointments();
-
-    @Transaction
-    @Query("SELECT DISTINCT caregiver.* " +
-            "FROM caregiver, appointment " +
-            "WHERE appointment.date BETWEEN :start AND :end ")
-    List<CaregiverWAppointments> getWAppointmentsForDate(long start, long end);
-
-    @Query("SELECT caregiver.uuid, COUNT(app_uuid) as counts " +
-            "FROM caregiver LEFT JOIN " +
-            "(SELECT appointment.uuid as app_uuid FROM appointment WHERE appointment.date BETWEEN :start AND :end ) " +
-            "ON caregiver.uuid=app_uuid " +
-            "GROUP BY caregiver.uuid " +
-            "ORDER BY COUNT(app_uuid)" +
-            "LIMIT 10")
-    List<CountWork> getByAppointmentCountForDate(long start, long end);
+    // Every caregiver, joined with its appointments in the date range through the (uuid, date) index.
+    // Rows are ordered by caregiver, so they can be grouped in a single pass.
+    @Query("SELECT caregiver.*, " +
+            "appointment.appointmentId AS app_appointmentId, appointment.patient_name AS app_patient_name, " +
+            "appointment.room_number AS app_room_number, appointment.uuid AS app_uuid, appointment.date AS app_date " +
+            "FROM caregiver LEFT JOIN appointment " +
+            "ON appointment.uuid = caregiver.uuid AND appointment.date BETWEEN :start AND :end " +
+            "ORDER BY caregiver.uuid, appointment.date")
+    List<CaregiverAppointmentRow> getWAppointmentsForDate(long start, long end);
+
+    // Workload of every caregiver, in a single scan of their appointments between rangeStart and rangeEnd,
+    // which must contain the week, history and slots ranges.
+    @Query("SELECT caregiver.uuid AS uuid, " +
+            "COUNT(CASE WHEN appointment.date BETWEEN :weekStart AND :weekEnd THEN 1 END) AS week_count, " +
+            "COUNT(CASE WHEN appointment.date BETWEEN :historyStart AND :historyEnd THEN 1 END) AS history_count, " +
+            "GROUP_CONCAT(CASE WHEN appointment.date BETWEEN :slotsStart AND :slotsEnd " +
+            "THEN appointment.date || ':' || appointment.room_number END) AS slots " +
+            "FROM caregiver LEFT JOIN appointment " +
+            "ON appointment.uuid = caregiver.uuid AND appointment.date BETWEEN :rangeStart AND :rangeEnd " +
+            "GROUP BY caregiver.uuid")
+    List<CaregiverWorkload> getWorkloadSync(long weekStart, long weekEnd, long historyStart, long historyEnd,
+                                            long slotsStart, long slotsEnd, long rangeStart, long rangeEnd);
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package nova.daniel.empatica.persistence.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+import nova.daniel.empatica.model.CaregiverPage;
+
+/**
+ * Direct access object for {@link CaregiverPage} entities
+ */
+@Dao
+public interface CaregiverPageDAO {
+
+    @Query("SELECT * FROM caregiver_page WHERE page IN (:pages)")
+    List<CaregiverPage> getPagesSync(int[] pages);
+
+    @Query("SELECT * FROM caregiver_page ORDER BY page DESC LIMIT 1")
+    CaregiverPage getLastPageSync();
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(CaregiverPage... pages);
+
+    @Query("DELETE FROM caregiver_page")
+    void deleteAll();
+}
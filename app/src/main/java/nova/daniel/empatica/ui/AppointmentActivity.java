@@ -9,6 +9,7 @@ import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.Spinner;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProviders;
@@ -20,7 +21,6 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
-import jp.wasabeef.glide.transformations.RoundedCornersTransformation;
 import nova.daniel.empatica.R;
 import nova.daniel.empatica.Utils;
 import nova.daniel.empatica.api.GlideApp;
@@ -134,7 +134,7 @@ public class AppointmentActivity extends AppCompatActivity implements Appointmen
                 mPatientNameEditText.setText(appointment.mPatientName);
                 mSaveButton.setText(getString(R.string.update_appointment));
                 mAppointmentViewModel.currentRoomNumber = appointment.mRoom;
-                updateCaregiverForAppointment(appointment.mCaregiver.uuid);
+                updateCaregiverForAppointment(appointment.mCaregiverId);
 
                 mDeleteFab.show();
                 getAvailableRooms(); // we gotta wait for the respective appointment to be fetched before setting up the spinner
@@ -203,9 +203,7 @@ public class AppointmentActivity extends AppCompatActivity implements Appointmen
                 // Set pic with Glide
                 GlideApp.with(AppointmentActivity.this)
                         .load(caregiver.mPictureURL)
-                        .placeholder(R.drawable.ic_person_outline_white_24dp)
-                        .centerCrop()
-                        .transform(new RoundedCornersTransformation(45, 2))
+                        .caregiverThumbnail()
                         .into(mCaregiverPictureView);
 
                 isCaregiverSelected = true;
@@ -236,9 +234,8 @@ public class AppointmentActivity extends AppCompatActivity implements Appointmen
     }
 
     /**
-     * Checks if the input is valid, and then checks if the caregiver selected can be added
-     * to the new appointment. Since new queries are needed, these are sent to the view model,
-     * analyzed there and trigger a callback to this activity.
+     * Checks if the input is valid, and then sends the appointment to the view model, which checks if the
+     * caregiver selected can be added to it and saves it, and triggers a callback to this activity.
      *
      * Check method conflictResultCallback for the results.
      *
@@ -255,13 +252,16 @@ public class AppointmentActivity extends AppCompatActivity implements Appointmen
                 Integer.parseInt(mRoomSpinner.getSelectedItem().toString()) // room
         );
 
-        // Check for conflicts
-        mAppointmentViewModel.checkCaregiverForConflict(newAppointment, this);
+        if (mUpdate)
+            newAppointment.appointmentId = mAppointmentViewModel.editingAppointmentId;
+
+        // Check for conflicts, and save if there are none
+        mAppointmentViewModel.save(newAppointment, this);
     }
 
 
     /**
-     * Callback implementation that saves the new appointment if no conflict was found.
+     * Callback implementation that finishes the activity if the appointment was saved.
      * Otherwise displays the respective error message.
      *
      * @param newAppointment New appointment to add
@@ -271,19 +271,7 @@ public class AppointmentActivity extends AppCompatActivity implements Appointmen
     public void conflictResultCallback(Appointment newAppointment, AppointmentViewModel.CONFLICT_CODES code) {
 
         if (code == AppointmentViewModel.CONFLICT_CODES.NONE) {
-            //Two checks have to be passed, hour and weekly conflicts or caregivers
-            if(mAppointmentViewModel.allChecksPassed()) {
-                if (mUpdate) {
-                    newAppointment.appointmentId = mAppointmentViewModel.editingAppointmentId;
-                    mAppointmentViewModel.update(newAppointment);
-                } else {
-                    mAppointmentViewModel.add(newAppointment);
-                }
-
-                mAppointmentViewModel.caregiversByHourData.removeObservers(this);
-                mAppointmentViewModel.caregiversByWeek.removeObservers(this);
-                finish();
-            }
+            finish();
         } else {
             mSaveButton.setEnabled(true);
             if (code == AppointmentViewModel.CONFLICT_CODES.CAREGIVER_BUSY) {
@@ -294,6 +282,12 @@ public class AppointmentActivity extends AppCompatActivity implements Appointmen
                 mCarerLastNameTextView.requestFocus();
                 mCarerLastNameTextView.setError(getString(R.string.error_caregiver_max_slots_week));
             }
+            if (code == AppointmentViewModel.CONFLICT_CODES.ROOM_UNAVAILABLE) {
+                Toast.makeText(this, R.string.error_room_taken, Toast.LENGTH_SHORT).show(); // the spinner is refreshed by getAvailableRooms
+            }
+            if (code == AppointmentViewModel.CONFLICT_CODES.SAVE_FAILED) {
+                Toast.makeText(this, R.string.error_save_failed, Toast.LENGTH_SHORT).show();
+            }
         }
     }
 
@@ -3,16 +3,21 @@ package nova.daniel.empatica.ui;
 import android.app.ProgressDialog;
 import android.content.Intent;
 import android.os.Bundle;
+import android.view.Menu;
 import android.view.View;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.lifecycle.ViewModelProviders;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader;
+
 import nova.daniel.empatica.R;
 import nova.daniel.empatica.adapter.CaregiverAdapter;
+import nova.daniel.empatica.api.GlideApp;
 import nova.daniel.empatica.model.Caregiver;
 import nova.daniel.empatica.viewmodel.CaregiverViewModel;
 
@@ -21,7 +26,9 @@ import nova.daniel.empatica.viewmodel.CaregiverViewModel;
  * The list is populated by using the {@link CaregiverViewModel} instance.
  * A caregiver can be tapped to be selected, and its respective ID is returned in the result intent to the calling activity.
  *
- * The list of caregivers can also be sorted by their last name by tapping the fab.
+ * The list of caregivers is paged, more caregivers are fetched from the API when scrolling to its end.
+ * The list of caregivers can also be sorted by their last name by tapping the fab,
+ * and searched by first and last name from the search action.
  */
 @SuppressWarnings("deprecation")
 public class CaregiversActivity extends AppCompatActivity implements CaregiverAdapter.onItemClickListener {
@@ -29,11 +36,12 @@ public class CaregiversActivity extends AppCompatActivity implements CaregiverAd
     // Intent names
     public static final String SELECTED_CAREGIVER = "SELECTED_CAREGIVER";
 
+    // Number of thumbnails preloaded ahead of the scroll direction, about a screen of rows
+    private static final int MAX_PRELOAD = 12;
+
     public RecyclerView mRecyclerView;
     public CaregiverAdapter mAdapter; // mRecyclerView adapter
 
-    private int mPage = 1; // Page of caregivers to fetch
-
     ProgressDialog progressDialog;
 
     CaregiverViewModel mCaregiverViewModel;
@@ -52,12 +60,14 @@ public class CaregiversActivity extends AppCompatActivity implements CaregiverAd
         mAdapter = new CaregiverAdapter(this);
         mRecyclerView.setAdapter(mAdapter);
         mRecyclerView.setLayoutManager(new LinearLayoutManager(getApplication()));
+        mRecyclerView.addOnScrollListener(new RecyclerViewPreloader<>(GlideApp.with(this), mAdapter,
+                mAdapter.getPreloadSizeProvider(), MAX_PRELOAD));
 
         // Created ViewModel and update adapter in case of changes.
         mCaregiverViewModel = ViewModelProviders.of(this).get(CaregiverViewModel.class);
-        mCaregiverViewModel.getAll().observe(this, caregiverEntities -> {
+        mCaregiverViewModel.getPaged().observe(this, caregivers -> {
             progressDialog.dismiss();
-            mAdapter.setCaregiversList(caregiverEntities);
+            mAdapter.submitList(caregivers);
         });
     }
 
@@ -71,32 +81,40 @@ public class CaregiversActivity extends AppCompatActivity implements CaregiverAd
     }
 
     /**
-     * Call for more caregivers to be fetched from the view model depending on the current page of fetched results.
-     * A maximum of 100 caregivers can be fetched, if over that limit, an error Toast is displayed,
-     * and disable the "load more" button.
+     * Sets up the search action, every change of the search text is sent to the view model, which debounces it.
      *
-     * @param view Clicked view
+     * @param menu Options menu
+     * @return True to display the menu
      */
-    public void loadMoreOnClick(View view) {
-        // Check for fetch limit and disable the "load more" button
-        if (mCaregiverViewModel.isOverLimit()){
-            Toast.makeText(this, getString(R.string.toast_max_caregivers_reached), Toast.LENGTH_SHORT).show();
-            View button = findViewById(R.id.loadmore_button);
-            button.setEnabled(false);
-        } else {
-            progressDialog.show();
-            mPage += 1;
-            mCaregiverViewModel.fetchMoreCaregivers(mPage);
-        }
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_caregivers, menu);
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setQueryHint(getString(R.string.action_search));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mCaregiverViewModel.setSearch(query);
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                mCaregiverViewModel.setSearch(newText);
+                return true;
+            }
+        });
+        return true;
     }
 
     /**
-     * Calls the adapter to sort the list of caregivers.
+     * Calls the view model to sort the list of caregivers.
      * @param view Clicked View
      */
     public void sortOnClick(View view){
         Toast.makeText(this, getString(R.string.toast_sortingname), Toast.LENGTH_SHORT).show();
-        mAdapter.doSort();
+        mCaregiverViewModel.toggleSortByLastName();
     }
 
     /**
@@ -3,6 +3,8 @@ package nova.daniel.empatica.ui;
 import android.app.ProgressDialog;
 import android.content.Intent;
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.Toast;
 
@@ -19,6 +21,7 @@ import devs.mulham.horizontalcalendar.HorizontalCalendar;
 import devs.mulham.horizontalcalendar.utils.HorizontalCalendarListener;
 import nova.daniel.empatica.AutoFitOperationTask;
 import nova.daniel.empatica.R;
+import nova.daniel.empatica.TimeBuckets;
 import nova.daniel.empatica.Utils;
 import nova.daniel.empatica.adapter.AppointmentViewAdapter;
 import nova.daniel.empatica.adapter.HoursViewAdapter;
@@ -56,6 +59,9 @@ public class MainActivity extends AppCompatActivity
     // Hospital model, containing all appointments by the current mSelectedDate
     Hospital mHospitalModel;
 
+    // Strategy used by the auto-fit task, selected from the options menu
+    AutoFitOperationTask.Strategy mAutoFitStrategy = AutoFitOperationTask.Strategy.GREEDY;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -96,9 +102,8 @@ public class MainActivity extends AppCompatActivity
         mHospitalModel.initializeSlots(null);
 
         // Set up adapter for hoursRecyclerView
-        mAdapter = new HoursViewAdapter(this,
-                mHospitalModel.getHourSlotModelArrayList(),
-                this, this);
+        mAdapter = new HoursViewAdapter(this, this, this);
+        mAdapter.submitList(mHospitalModel.getHourSlotModelArrayList());
         hoursRecyclerView.setAdapter(mAdapter);
     }
 
@@ -107,11 +112,39 @@ public class MainActivity extends AppCompatActivity
     @Override
     protected void onResume() {
         super.onResume();
+        TimeBuckets.reset(); // the time zone may have changed while paused
         Calendar cal = Calendar.getInstance();
         cal.setTime(mSelectedDate != null ? mSelectedDate : new Date());
         onDateSelected(cal);
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        return true;
+    }
+
+    /**
+     * Toggles the optimal auto-fit strategy when its menu item is selected.
+     *
+     * @param item Selected menu item
+     * @return True if the selection was handled
+     */
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_optimal_autofit) {
+            item.setChecked(!item.isChecked());
+            mAutoFitStrategy = item.isChecked() ? AutoFitOperationTask.Strategy.OPTIMAL : AutoFitOperationTask.Strategy.GREEDY;
+            return true;
+        }
+        if (item.getItemId() == R.id.action_autofit_week) {
+            showAutoFitProgress();
+            mHospitalModel.autoFitWeek(mSelectedDate, mAutoFitStrategy);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
     /**
      * Calls for the update of the mHospitalModel with the new given date.
      * Called when a new date is selected
@@ -165,20 +198,41 @@ public class MainActivity extends AppCompatActivity
      * @param view Calling view
      */
     public void onClickAutoFit(View view) {
+        showAutoFitProgress();
+        mHospitalModel.autoFitCaregiver(mSelectedDate, mAutoFitStrategy);
+    }
+
+    /**
+     * Shows the progress dialog while the auto-fit task is running.
+     */
+    private void showAutoFitProgress() {
         mProgressDialog.setMessage(getString(R.string.fittinINProgress));
         mProgressDialog.setCanceledOnTouchOutside(false);
         mProgressDialog.setCancelable(false);
         mProgressDialog.show();
-        mHospitalModel.autoFitCaregiver(mSelectedDate);
     }
 
     /**
      * Implemented interface to update the adapters of the recycler views.
+     * The new model is diffed against the current one off the main thread, and only the changed hours are bound.
      * @param model New model
      */
     @Override
     public void updateAdapter(List<HourSlotModel> model) {
-        mAdapter.notifyModelChanged(model);
+        mAdapter.submitList(model);
+    }
+
+    /**
+     * Callback when the {@link AutoFitOperationTask} starts scheduling a new day.
+     * Updates the progress dialog message when more than one day is being scheduled.
+     *
+     * @param day       Number of the day being scheduled, starting from 1
+     * @param totalDays Number of days to schedule
+     */
+    @Override
+    public void onAutoFitProgress(int day, int totalDays) {
+        if (totalDays > 1)
+            mProgressDialog.setMessage(getString(R.string.fittingDayProgress, day, totalDays));
     }
 
     /**
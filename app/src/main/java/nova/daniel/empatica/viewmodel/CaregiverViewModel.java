@@ -1,33 +1,96 @@
 package nova.daniel.empatica.viewmodel;
 
 import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Transformations;
+import androidx.paging.PagedList;
 
 import java.util.List;
 
-import nova.daniel.empatica.R;
 import nova.daniel.empatica.model.Caregiver;
 import nova.daniel.empatica.persistence.CaregiverRepository;
 
 /**
  * ViewModel for caregivers
+ * <p>
+ * The paged list of caregivers depends on a search text and on the sort order. Changes of the order apply at once,
+ * while changes of the search text are debounced by SEARCH_DEBOUNCE_MS, so typing only queries the database once
+ * the user pauses. Queries run off the main thread, see {@link CaregiverRepository#getPaged(String, boolean)}.
  */
 public class CaregiverViewModel extends AndroidViewModel {
 
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+
     private CaregiverRepository mRepository;
     private LiveData<List<Caregiver>> mCaregivers;
+    private MutableLiveData<ListRequest> mListRequest = new MutableLiveData<>();
+    private LiveData<PagedList<Caregiver>> mPagedCaregivers;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private String mPendingSearch = null;
+    private final Runnable mApplySearch = () -> setListRequest(mPendingSearch, getListRequest().mByLastName);
 
     public CaregiverViewModel(@NonNull Application application) {
         super(application);
         mRepository = new CaregiverRepository(application, true);
+        mListRequest.setValue(new ListRequest(null, false));
+        mPagedCaregivers = Transformations.switchMap(mListRequest,
+                request -> mRepository.getPaged(request.mSearch, request.mByLastName));
     }
 
-    public LiveData<List<Caregiver>> getAll() {
-        mCaregivers = mRepository.getAll();
-        return mCaregivers;
+    /**
+     * Returns the caregivers matching the search as a paged list, in the order set by {@link #toggleSortByLastName()}.
+     * A new paged list is emitted every time the search or the order changes.
+     *
+     * @return Paged list of the matching caregivers
+     */
+    public LiveData<PagedList<Caregiver>> getPaged() {
+        return mPagedCaregivers;
+    }
+
+    /**
+     * Toggles if the caregivers are sorted alphabetically by last name, by the database.
+     */
+    public void toggleSortByLastName() {
+        ListRequest current = getListRequest();
+        setListRequest(current.mSearch, !current.mByLastName);
+    }
+
+    /**
+     * Searches the caregivers by first and last name, once no new search is set for SEARCH_DEBOUNCE_MS.
+     *
+     * @param search Text typed by the user, null or empty to list all caregivers
+     */
+    public void setSearch(String search) {
+        mPendingSearch = search;
+        mHandler.removeCallbacks(mApplySearch);
+        mHandler.postDelayed(mApplySearch, SEARCH_DEBOUNCE_MS);
+    }
+
+    private ListRequest getListRequest() {
+        return mListRequest.getValue();
+    }
+
+    /**
+     * Emits a new request, unless it is equal to the current one, so the same query is not loaded twice.
+     */
+    private void setListRequest(String search, boolean byLastName) {
+        String trimmed = search == null ? "" : search.trim();
+        ListRequest current = getListRequest();
+        if (current.mSearch.equals(trimmed) && current.mByLastName == byLastName)
+            return;
+        mListRequest.setValue(new ListRequest(trimmed, byLastName));
+    }
+
+    @Override
+    protected void onCleared() {
+        mHandler.removeCallbacks(mApplySearch);
     }
 
     // Fetch all IDs
@@ -40,27 +103,20 @@ public class CaregiverViewModel extends AndroidViewModel {
         return mCaregivers;
     }
 
-    /**
-     * Calls the repository to fetch more caregivers. Initially fetches a page of 1.
-     *
-     * @param mPage Page to fetch.
-     */
-    public void fetchMoreCaregivers(int mPage) {
-        mRepository.fetchCaregivers(mPage);
-    }
-
     public void add(Caregiver caregiver) {
         mRepository.insert(caregiver);
     }
 
     /**
-     * Checks if the current number of caregivers exceeds the maximum.
-     * This maximum is set in the integers resource file, under api_max_results, with a default value of 100.
-     *
-     * @return True if there are equal or more than api_max_results entries in the repository, false if the total number is less than api_max_results
+     * Search text and order of the paged list of caregivers.
      */
-    public boolean isOverLimit(){
-        int max = getApplication().getResources().getInteger(R.integer.api_max_results);
-        return mCaregivers.getValue() != null && mCaregivers.getValue().size() >= max;
+    private static class ListRequest {
+        final String mSearch;
+        final boolean mByLastName;
+
+        ListRequest(String search, boolean byLastName) {
+            mSearch = search == null ? "" : search;
+            mByLastName = byLastName;
+        }
     }
 }
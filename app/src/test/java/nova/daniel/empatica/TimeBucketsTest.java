@@ -0,0 +1,343 @@
+package nova.daniel.empatica;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link TimeBuckets} with the Calendar based helpers it replaced, around every daylight saving
+ * transition from 2010 to 2020 and at random times, in time zones with positive, negative and non-hourly offsets.
+ * <p>
+ * The Calendar helpers are those of Utils before TimeBuckets. The end bounds also set the seconds and
+ * milliseconds, as the helpers were only called with times at the start of an hour, which TimeBuckets documents.
+ * Where TimeBuckets documents a difference, in hours repeated or cut by a transition and on days whose midnight
+ * Calendar misses, its bounds are checked on their own.
+ */
+public class TimeBucketsTest {
+
+    private static final String[][] ZONES = {
+            // Time zone, language and country of the locale, which sets the first day of the week
+            {"America/New_York", "en", "US"},           // -5:00 / -4:00, weeks start on Sunday
+            {"America/Sao_Paulo", "pt", "BR"},          // -3:00 / -2:00, clocks changed at midnight until 2019
+            {"America/St_Johns", "en", "CA"},           // -3:30 / -2:30
+            {"Europe/Lisbon", "en", "GB"},              // 0:00 / +1:00, weeks start on Monday
+            {"Asia/Kolkata", "en", "IN"},               // +5:30, no daylight saving
+            {"Australia/Sydney", "en", "AU"},           // +10:00 / +11:00, southern hemisphere
+            {"Australia/Lord_Howe", "en", "AU"},        // +10:30 / +11:00, half hour transitions
+            {"Pacific/Chatham", "en", "NZ"},            // +12:45 / +13:45
+    };
+
+    private static final long FIRST_YEAR = 1262304000000L; // 2010-01-01 UTC
+    private static final long LAST_YEAR = 1609459200000L;  // 2021-01-01 UTC
+    private static final long STEP = 7 * TimeBuckets.MILLIS_PER_MINUTE + 13 * 1000 + 17; // Not aligned to minutes
+
+    private TimeZone mDefaultTimeZone;
+    private Locale mDefaultLocale;
+
+    @Before
+    public void setUp() {
+        mDefaultTimeZone = TimeZone.getDefault();
+        mDefaultLocale = Locale.getDefault();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mDefaultTimeZone);
+        Locale.setDefault(mDefaultLocale);
+        TimeBuckets.reset();
+    }
+
+    @Test
+    public void aroundTransitions_matchCalendar() {
+        for (String[] zone : ZONES) {
+            TimeZone timeZone = setDefaults(zone);
+            List<Long> transitions = transitions(timeZone);
+            if (timeZone.useDaylightTime())
+                assertTrue(zone[0] + " should have transitions", transitions.size() >= 20);
+            for (long transition : transitions)
+                for (long time = transition - 2 * TimeBuckets.MILLIS_PER_DAY;
+                     time < transition + 2 * TimeBuckets.MILLIS_PER_DAY; time += STEP)
+                    assertMatchesCalendar(zone[0], time);
+        }
+    }
+
+    @Test
+    public void randomTimes_matchCalendar() {
+        Random random = new Random(20);
+        for (String[] zone : ZONES) {
+            setDefaults(zone);
+            for (int i = 0; i < 20000; i++)
+                assertMatchesCalendar(zone[0], FIRST_YEAR + (long) (random.nextDouble() * (LAST_YEAR - FIRST_YEAR)));
+        }
+    }
+
+    @Test
+    public void hourBounds_aroundTransitions_containTheTime() {
+        for (String[] zone : ZONES) {
+            TimeZone timeZone = setDefaults(zone);
+            for (long transition : transitions(timeZone))
+                for (long time = transition - 2 * TimeBuckets.MILLIS_PER_HOUR;
+                     time < transition + 2 * TimeBuckets.MILLIS_PER_HOUR; time += STEP)
+                    assertHourBounds(zone[0] + " at " + new Date(time), time);
+        }
+    }
+
+    /**
+     * Reports the latency and allocation of the day, hour and week bounds, with TimeBuckets and with Calendar,
+     * and checks TimeBuckets does not allocate.
+     */
+    @Test
+    public void benchmark_timeBucketsVsCalendar() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        setDefaults(ZONES[3]);
+
+        int calls = 200000;
+        long[] times = new long[calls];
+        Random random = new Random(21);
+        for (int i = 0; i < calls; i++)
+            times[i] = FIRST_YEAR + (long) (random.nextDouble() * (LAST_YEAR - FIRST_YEAR));
+        for (int i = 0; i < 3; i++) {
+            bucketAll(times);
+            calendarAll(times);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long bytes = allocations.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        assertTrue(bucketAll(times) != 0);
+        long bucketNanos = System.nanoTime() - start;
+        long bucketBytes = allocations.getThreadAllocatedBytes(threadId) - bytes;
+
+        bytes = allocations.getThreadAllocatedBytes(threadId);
+        start = System.nanoTime();
+        assertTrue(calendarAll(times) != 0);
+        long calendarNanos = System.nanoTime() - start;
+        long calendarBytes = allocations.getThreadAllocatedBytes(threadId) - bytes;
+
+        System.out.println(String.format("%,d times, day, hour and week bounds: TimeBuckets %.1f ns and %d bytes " +
+                        "per time; Calendar %.1f ns and %d bytes per time", calls,
+                (double) bucketNanos / calls, bucketBytes / calls, (double) calendarNanos / calls,
+                calendarBytes / calls));
+        assertTrue("TimeBuckets allocated " + bucketBytes + " bytes", bucketBytes < 1000);
+        assertTrue("TimeBuckets took " + bucketNanos + " ns, Calendar " + calendarNanos,
+                bucketNanos < calendarNanos);
+    }
+
+    private static long bucketAll(long[] times) {
+        long checksum = 0;
+        for (long time : times)
+            checksum += TimeBuckets.dayStart(time) + TimeBuckets.hourStart(time) + TimeBuckets.weekStart(time);
+        return checksum;
+    }
+
+    private static long calendarAll(long[] times) {
+        long checksum = 0;
+        for (long time : times)
+            checksum += dayStart(time) + hourStart(time) + weekStart(time);
+        return checksum;
+    }
+
+    private static void assertMatchesCalendar(String zone, long time) {
+        String message = zone + " at " + time;
+        assertDayStart("dayStart, " + message, dayStart(time), TimeBuckets.dayStart(time));
+        assertEquals("dayEnd, " + message, dayEnd(time), TimeBuckets.dayEnd(time));
+        assertDayStart("weekStart, " + message, weekStart(time), TimeBuckets.weekStart(time));
+        assertEquals("weekEnd, " + message, weekEnd(time), TimeBuckets.weekEnd(time));
+        assertEquals("addWeeks, " + message, addWeeks(time, 1), TimeBuckets.addWeeks(time, 1));
+        assertEquals("addWeeks back, " + message, addWeeks(time, -4), TimeBuckets.addWeeks(time, -4));
+
+        long hourStart = hourStart(time);
+        if (inRepeatedHour(time) || inCutHour(time)) {
+            assertHourBounds(message, time);
+        } else {
+            assertEquals("hourStart, " + message, hourStart, TimeBuckets.hourStart(time));
+            assertEquals("hourEnd, " + message, hourEnd(time), TimeBuckets.hourEnd(time));
+        }
+        // Hours are only set on times already at the start of an hour
+        if (hourStart == TimeBuckets.hourStart(time))
+            for (int hour = 0; hour < 24; hour++)
+                assertEquals("atHour " + hour + ", " + message, atHour(hourStart, hour),
+                        TimeBuckets.atHour(hourStart, hour));
+    }
+
+    /**
+     * Checks the hour bounds contain the time, are in its hour, and start and end at the hour or at a transition
+     */
+    private static void assertHourBounds(String message, long time) {
+        long start = TimeBuckets.hourStart(time);
+        long end = TimeBuckets.hourEnd(time);
+        assertTrue("Bounds " + start + " to " + end + ", " + message, start <= time && time < end + 1000);
+        assertTrue("Hour of " + (end - start) + " ms, " + message, end - start < TimeBuckets.MILLIS_PER_HOUR);
+        int hour = hourOfDay(time);
+        assertEquals("Hour of the start, " + message, hour, hourOfDay(start));
+        assertEquals("Hour of the end, " + message, hour, hourOfDay(end));
+        assertTrue("Start, " + message, minuteOfHour(start) == 0 || isTransition(start));
+        assertTrue("End, " + message, minuteOfHour(end + 1000) == 0 || isTransition(end + 1000));
+    }
+
+    /**
+     * Day bounds are those of Calendar, unless Calendar missed the midnight of the day, which TimeBuckets keeps
+     */
+    private static void assertDayStart(String message, long calendar, long buckets) {
+        if (isMidnight(calendar) || !isMidnight(buckets))
+            assertEquals(message, calendar, buckets);
+        else
+            assertEquals(message, localDate(calendar), localDate(buckets));
+    }
+
+    /**
+     * Whether a transition cuts the local hour of the time, i.e. the offset changes within it
+     */
+    private static boolean inCutHour(long time) {
+        TimeZone timeZone = TimeZone.getDefault();
+        int offset = timeZone.getOffset(time);
+        long start = time - Math.floorMod(time + offset, TimeBuckets.MILLIS_PER_HOUR);
+        return timeZone.getOffset(start) != offset
+                || timeZone.getOffset(start + TimeBuckets.MILLIS_PER_HOUR - 1) != offset;
+    }
+
+    private static boolean isTransition(long time) {
+        TimeZone timeZone = TimeZone.getDefault();
+        return timeZone.getOffset(time - 1) != timeZone.getOffset(time);
+    }
+
+    private static boolean isMidnight(long time) {
+        return hourOfDay(time) == 0 && minuteOfHour(time) == 0;
+    }
+
+    private static int hourOfDay(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        return cal.get(Calendar.HOUR_OF_DAY);
+    }
+
+    private static int minuteOfHour(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        return cal.get(Calendar.MINUTE);
+    }
+
+    private static int localDate(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        return cal.get(Calendar.YEAR) * 1000 + cal.get(Calendar.DAY_OF_YEAR);
+    }
+
+    /**
+     * Whether the local hour of the time happens twice, in full or in part, when clocks go back.
+     * Transitions not on the hour repeat the end of an hour, up to two hours from the time.
+     */
+    private static boolean inRepeatedHour(long time) {
+        TimeZone timeZone = TimeZone.getDefault();
+        return timeZone.getOffset(time - 2 * TimeBuckets.MILLIS_PER_HOUR) > timeZone.getOffset(time)
+                || timeZone.getOffset(time + 2 * TimeBuckets.MILLIS_PER_HOUR) < timeZone.getOffset(time);
+    }
+
+    private static TimeZone setDefaults(String[] zone) {
+        TimeZone timeZone = TimeZone.getTimeZone(zone[0]);
+        assertEquals(zone[0], timeZone.getID());
+        TimeZone.setDefault(timeZone);
+        Locale.setDefault(new Locale(zone[1], zone[2]));
+        TimeBuckets.reset();
+        return timeZone;
+    }
+
+    /**
+     * Instants when the offset of the time zone changes, from 2010 to 2020
+     */
+    private static List<Long> transitions(TimeZone timeZone) {
+        List<Long> transitions = new ArrayList<>();
+        int offset = timeZone.getOffset(FIRST_YEAR);
+        for (long time = FIRST_YEAR; time < LAST_YEAR; time += 15 * TimeBuckets.MILLIS_PER_MINUTE) {
+            int next = timeZone.getOffset(time);
+            if (next != offset)
+                transitions.add(time);
+            offset = next;
+        }
+        return transitions;
+    }
+
+    // Calendar helpers of Utils before TimeBuckets
+
+    private static long hourStart(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+
+    private static long hourEnd(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        cal.set(Calendar.MINUTE, 59);
+        cal.set(Calendar.SECOND, 59);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+
+    private static long atHour(long time, int hour) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        cal.set(Calendar.HOUR_OF_DAY, hour);
+        return hourStart(cal.getTimeInMillis());
+    }
+
+    private static long dayStart(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        return hourStart(cal.getTimeInMillis());
+    }
+
+    private static long dayEnd(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        cal.set(Calendar.HOUR_OF_DAY, 23);
+        cal.set(Calendar.MINUTE, 59);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+
+    private static long weekStart(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        cal.set(Calendar.DAY_OF_WEEK, cal.getFirstDayOfWeek());
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        return hourStart(cal.getTimeInMillis());
+    }
+
+    private static long weekEnd(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(weekStart(time));
+        cal.add(Calendar.DAY_OF_YEAR, 6);
+        cal.set(Calendar.HOUR_OF_DAY, 23);
+        cal.set(Calendar.MINUTE, 59);
+        return cal.getTimeInMillis();
+    }
+
+    private static long addWeeks(long time, int weeks) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        cal.add(Calendar.WEEK_OF_YEAR, weeks);
+        return cal.getTimeInMillis();
+    }
+}
@@ -0,0 +1,47 @@
+package nova.daniel.empatica.api;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link BandwidthBudget} on its own. The downloads it spaces are checked by {@link ThumbnailPrefetcherTest}.
+ */
+public class BandwidthBudgetTest {
+
+    @Test
+    public void reserve_spacesDownloadsByTheirEstimate() {
+        BandwidthBudget budget = new BandwidthBudget(1000, 500);
+
+        assertEquals(0, budget.reserve(500, 0));
+        assertEquals(500, budget.reserve(500, 0));
+        assertEquals(900, budget.reserve(500, 100));
+        // Unused budget is not saved for later
+        assertEquals(0, budget.reserve(500, 5000));
+        assertEquals(500, budget.reserve(500, 5000));
+    }
+
+    @Test
+    public void reconcile_movesTheNextStartByTheDifference() {
+        BandwidthBudget budget = new BandwidthBudget(1000, 500);
+        budget.reserve(500, 0);
+        budget.reconcile(500, 1500);
+        assertEquals(1500, budget.reserve(500, 0));
+
+        budget = new BandwidthBudget(1000, 500);
+        budget.reserve(500, 0);
+        budget.reconcile(500, 100);
+        assertEquals(100, budget.reserve(500, 0));
+    }
+
+    @Test
+    public void estimate_followsTheDownloadedSizes() {
+        BandwidthBudget budget = new BandwidthBudget(1000, 800);
+        budget.reconcile(800, 1600);
+        assertEquals(900, budget.getEstimatedBytes());
+        for (int i = 0; i < 100; i++)
+            budget.reconcile(budget.getEstimatedBytes(), 1600);
+        assertTrue(budget.getEstimatedBytes() > 1500);
+    }
+}
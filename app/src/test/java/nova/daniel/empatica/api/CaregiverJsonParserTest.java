@@ -0,0 +1,170 @@
+package nova.daniel.empatica.api;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import nova.daniel.empatica.model.Caregiver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CaregiverJsonParser}, and a benchmark of the allocation and latency of parsing a page of
+ * 1,000 results, compared with building the whole JSON tree first.
+ * <p>
+ * org.json is only a stub in local unit tests, so the tree is built with Gson's {@link JsonParser}, which
+ * keeps every field of the response as the JSONObject of Volley's JsonObjectRequest did.
+ */
+public class CaregiverJsonParserTest {
+
+    private static final int PAGE_SIZE = 1000;
+
+    @Test
+    public void parse_readsUsedFields() throws IOException {
+        List<Caregiver> caregivers = CaregiverJsonParser.parse(new StringReader(page(2)));
+
+        assertEquals(2, caregivers.size());
+        Caregiver first = caregivers.get(0);
+        assertEquals("uuid-0", first.uuid);
+        assertEquals("first0", first.mFirstName);
+        assertEquals("last0", first.mLastName);
+        assertEquals("https://randomuser.me/api/portraits/thumb/men/0.jpg", first.mPictureURL);
+        assertEquals("uuid-1", caregivers.get(1).uuid);
+    }
+
+    @Test
+    public void parse_skipsResultsWithoutUuid() throws IOException {
+        String json = "{\"results\":[" +
+                "{\"name\":{\"first\":\"a\",\"last\":\"b\"},\"login\":{\"username\":\"x\"}}," +
+                "{\"name\":{\"first\":\"c\",\"last\":\"d\"},\"login\":{\"uuid\":null}}," +
+                "{\"name\":{\"first\":\"e\",\"last\":\"f\"},\"login\":{\"uuid\":\"\"}}," +
+                "{\"name\":{\"first\":\"g\",\"last\":\"h\"}}," +
+                "{\"name\":{\"first\":\"i\",\"last\":\"j\"},\"login\":{\"uuid\":\"kept\"}}]}";
+
+        List<Caregiver> caregivers = CaregiverJsonParser.parse(new StringReader(json));
+
+        assertEquals(1, caregivers.size());
+        assertEquals("kept", caregivers.get(0).uuid);
+        assertEquals("i", caregivers.get(0).mFirstName);
+    }
+
+    @Test
+    public void parse_acceptsNullsAndFieldsInAnyOrder() throws IOException {
+        String json = "{\"info\":{\"seed\":\"s\",\"results\":1},\"results\":[" +
+                "{\"login\":{\"uuid\":\"u\",\"password\":\"p\"},\"picture\":{\"large\":\"l\",\"thumbnail\":null}," +
+                "\"extra\":[1,{\"a\":[]}],\"name\":{\"title\":\"mr\",\"last\":\"smith\",\"first\":null}}]}";
+
+        List<Caregiver> caregivers = CaregiverJsonParser.parse(new StringReader(json));
+
+        assertEquals(1, caregivers.size());
+        Caregiver caregiver = caregivers.get(0);
+        assertEquals("u", caregiver.uuid);
+        assertNull(caregiver.mFirstName);
+        assertEquals("smith", caregiver.mLastName);
+        assertNull(caregiver.mPictureURL);
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_rejectsMalformedJson() throws IOException {
+        CaregiverJsonParser.parse(new StringReader("{\"results\":[{\"name\":"));
+    }
+
+    /**
+     * Reports the allocation and latency per page of 1,000 results, and checks the streaming parser allocates
+     * less than building the tree.
+     */
+    @Test
+    public void benchmark_perThousandResultPage() throws IOException {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+
+        String json = page(PAGE_SIZE);
+        int runs = 50;
+        for (int i = 0; i < runs; i++) {
+            CaregiverJsonParser.parse(new StringReader(json));
+            parseTree(json);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long bytes = allocations.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++)
+            assertEquals(PAGE_SIZE, CaregiverJsonParser.parse(new StringReader(json)).size());
+        long streamNanos = (System.nanoTime() - start) / runs;
+        long streamBytes = (allocations.getThreadAllocatedBytes(threadId) - bytes) / runs;
+
+        bytes = allocations.getThreadAllocatedBytes(threadId);
+        start = System.nanoTime();
+        for (int i = 0; i < runs; i++)
+            parseTree(json);
+        long treeNanos = (System.nanoTime() - start) / runs;
+        long treeBytes = (allocations.getThreadAllocatedBytes(threadId) - bytes) / runs;
+
+        System.out.println(String.format("1,000 results: streaming %.2f ms, %,d KB; tree %.2f ms, %,d KB",
+                streamNanos / 1e6, streamBytes / 1024, treeNanos / 1e6, treeBytes / 1024));
+        assertTrue("Streaming allocated " + streamBytes + " bytes, tree " + treeBytes,
+                streamBytes < treeBytes);
+    }
+
+    /**
+     * Builds the whole tree and reads the used fields from it
+     */
+    @SuppressWarnings("deprecation") // JsonParser.parseReader is not available in the Gson version of the app
+    private static int parseTree(String json) {
+        JsonElement root = new JsonParser().parse(new StringReader(json));
+        int count = 0;
+        for (JsonElement result : root.getAsJsonObject().getAsJsonArray("results")) {
+            Caregiver caregiver = new Caregiver();
+            caregiver.uuid = result.getAsJsonObject().getAsJsonObject("login").get("uuid").getAsString();
+            caregiver.mFirstName = result.getAsJsonObject().getAsJsonObject("name").get("first").getAsString();
+            caregiver.mLastName = result.getAsJsonObject().getAsJsonObject("name").get("last").getAsString();
+            caregiver.mPictureURL = result.getAsJsonObject().getAsJsonObject("picture").get("thumbnail").getAsString();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Builds a page of the API with the given number of results, with every field randomuser.me returns.
+     */
+    static String page(int results) {
+        StringBuilder json = new StringBuilder("{\"results\":[");
+        for (int i = 0; i < results; i++) {
+            if (i > 0)
+                json.append(',');
+            json.append("{\"gender\":\"male\",")
+                    .append("\"name\":{\"title\":\"mr\",\"first\":\"first").append(i)
+                    .append("\",\"last\":\"last").append(i).append("\"},")
+                    .append("\"location\":{\"street\":\"").append(i).append(" main street\",\"city\":\"lisbon\",")
+                    .append("\"state\":\"lisboa\",\"postcode\":\"1000\",")
+                    .append("\"coordinates\":{\"latitude\":\"38.7\",\"longitude\":\"-9.1\"},")
+                    .append("\"timezone\":{\"offset\":\"+0:00\",\"description\":\"Western Europe Time, London\"}},")
+                    .append("\"email\":\"first").append(i).append(".last").append(i).append("@example.com\",")
+                    .append("\"login\":{\"uuid\":\"uuid-").append(i).append("\",\"username\":\"user").append(i)
+                    .append("\",\"password\":\"secret\",\"salt\":\"abcdefgh\",\"md5\":\"0123456789abcdef\",")
+                    .append("\"sha1\":\"0123456789abcdef0123\",\"sha256\":\"0123456789abcdef0123456789abcdef\"},")
+                    .append("\"dob\":{\"date\":\"1980-01-01T00:00:00Z\",\"age\":39},")
+                    .append("\"registered\":{\"date\":\"2010-01-01T00:00:00Z\",\"age\":9},")
+                    .append("\"phone\":\"011-111-1111\",\"cell\":\"022-222-2222\",")
+                    .append("\"id\":{\"name\":\"SSN\",\"value\":\"123-45-6789\"},")
+                    .append("\"picture\":{\"large\":\"https://randomuser.me/api/portraits/men/").append(i)
+                    .append(".jpg\",\"medium\":\"https://randomuser.me/api/portraits/med/men/").append(i)
+                    .append(".jpg\",\"thumbnail\":\"https://randomuser.me/api/portraits/thumb/men/").append(i)
+                    .append(".jpg\"},\"nat\":\"PT\"}");
+        }
+        json.append("],\"info\":{\"seed\":\"empatica\",\"results\":").append(results)
+                .append(",\"page\":1,\"version\":\"1.2\"}}");
+        return json.toString();
+    }
+}
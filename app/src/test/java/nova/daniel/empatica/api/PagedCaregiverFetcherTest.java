@@ -0,0 +1,291 @@
+package nova.daniel.empatica.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nova.daniel.empatica.model.Caregiver;
+import nova.daniel.empatica.persistence.CaregiverRepository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link PagedCaregiverFetcher} against a local HTTP server that stands in for randomuser.me.
+ * <p>
+ * Pages are requested over HTTP on a pool of client threads and parsed with {@link CaregiverJsonParser}, as
+ * Volley does, and the results are delivered on a single thread that stands in for the main thread, which
+ * also runs the scheduled retries.
+ */
+public class PagedCaregiverFetcherTest {
+
+    private static final int RESULTS_PER_PAGE = 5;
+    private static final long BACKOFF_BASE_MS = 100;
+
+    private HttpServer mServer;
+    private String mApiUrl;
+    private ScheduledExecutorService mMainThread;
+    private ExecutorService mNetworkThreads;
+
+    // Server state
+    private final Map<Integer, Integer> mFailuresLeft = new ConcurrentHashMap<>(); // -1 to always fail
+    private final Map<Integer, List<Long>> mRequestTimes = new ConcurrentHashMap<>();
+    private final List<Integer> mRequestOrder = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger mConcurrent = new AtomicInteger();
+    private final AtomicInteger mMaxConcurrent = new AtomicInteger();
+    private volatile long mResponseDelayMs = 20;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/api/", this::handle);
+        mServer.setExecutor(Executors.newFixedThreadPool(16));
+        mServer.start();
+        mApiUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/api/?seed=empatica";
+        mMainThread = Executors.newSingleThreadScheduledExecutor();
+        mNetworkThreads = Executors.newFixedThreadPool(16);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        mMainThread.shutdownNow();
+        mNetworkThreads.shutdownNow();
+    }
+
+    @Test
+    public void pages_areMergedInPageOrder_withBoundedConcurrency() throws InterruptedException {
+        Result result = fetch(pages(10), 3, 2);
+
+        assertTrue(result.allSucceeded);
+        assertEquals(10 * RESULTS_PER_PAGE, result.caregivers.size());
+        for (int i = 0; i < result.caregivers.size(); i++)
+            assertEquals("p" + (i / RESULTS_PER_PAGE + 1) + "-" + i % RESULTS_PER_PAGE, result.caregivers.get(i).uuid);
+        assertTrue("At most 3 requests in flight, was " + mMaxConcurrent.get(), mMaxConcurrent.get() <= 3);
+        assertTrue("Requests should run concurrently", mMaxConcurrent.get() > 1);
+    }
+
+    @Test
+    public void failedPage_isRetriedWithBackoff() throws InterruptedException {
+        mFailuresLeft.put(2, 2); // Throttled twice
+
+        Result result = fetch(pages(4), 2, 2);
+
+        assertTrue(result.allSucceeded);
+        assertEquals(4 * RESULTS_PER_PAGE, result.caregivers.size());
+        List<Long> times = mRequestTimes.get(2);
+        assertEquals(3, times.size());
+        // The first retry waits between half and all the base delay, the second between one and two base delays
+        long firstWait = times.get(1) - times.get(0);
+        long secondWait = times.get(2) - times.get(1);
+        assertTrue("First retry after " + firstWait + " ms", firstWait >= BACKOFF_BASE_MS / 2);
+        assertTrue("Second retry after " + secondWait + " ms", secondWait >= BACKOFF_BASE_MS);
+    }
+
+    @Test
+    public void pageOutOfRetries_isReported_andOtherPagesKept() throws InterruptedException {
+        mFailuresLeft.put(3, -1);
+
+        Result result = fetch(pages(5), 2, 2);
+
+        assertFalse(result.allSucceeded);
+        assertEquals(3, mRequestTimes.get(3).size()); // First attempt and 2 retries
+        assertEquals(4 * RESULTS_PER_PAGE, result.caregivers.size());
+        for (Caregiver caregiver : result.caregivers)
+            assertFalse(caregiver.uuid.startsWith("p3-"));
+        assertEquals(4, result.fetchedPages.size());
+    }
+
+    @Test
+    public void pageWaitingForRetry_keepsItsSlot() throws InterruptedException {
+        mFailuresLeft.put(1, 1);
+        mResponseDelayMs = 0;
+
+        Result result = fetch(pages(3), 1, 2);
+
+        assertTrue(result.allSucceeded);
+        // With a single slot, page 2 is only requested once page 1 succeeded on its retry
+        assertEquals(Arrays.asList(1, 1, 2, 3), new ArrayList<>(mRequestOrder));
+    }
+
+    @Test
+    public void stalePage_isDeliveredAgainWhenRefreshed_andLateErrorsIgnored() throws InterruptedException {
+        // As Volley does for a soft-expired cache entry, page 1 is delivered stale and then refreshed,
+        // and the refresh of page 2 fails
+        Result result = fetch(pages(2), 2, 2, (page, results, listener) -> mMainThread.execute(() -> {
+            listener.resultCallback(caregivers(page, "stale"));
+            if (page == 1)
+                listener.resultCallback(caregivers(page, "fresh"));
+            else
+                listener.resultError();
+        }));
+
+        assertTrue(result.allSucceeded);
+        assertEquals(2, result.caregivers.size());
+        assertEquals(Arrays.asList(1, 1, 2), result.fetchedPages);
+        assertEquals("fresh", result.caregivers.get(0).uuid);
+        assertEquals("stale", result.caregivers.get(1).uuid);
+        assertEquals("fresh", result.lastFetched.get(1).get(0).uuid);
+        assertEquals("stale", result.lastFetched.get(2).get(0).uuid);
+    }
+
+    private Result fetch(int[] pages, int maxConcurrent, int maxRetries) throws InterruptedException {
+        return fetch(pages, maxConcurrent, maxRetries, this::fetchPage);
+    }
+
+    private Result fetch(int[] pages, int maxConcurrent, int maxRetries, PagedCaregiverFetcher.PageSource source)
+            throws InterruptedException {
+        Result result = new Result();
+        CountDownLatch done = new CountDownLatch(1);
+        PagedCaregiverFetcher fetcher = new PagedCaregiverFetcher(pages, RESULTS_PER_PAGE, maxConcurrent, maxRetries,
+                new PagedCaregiverFetcher.PagesListener() {
+                    @Override
+                    public void onPageFetched(int page, List<Caregiver> caregivers) {
+                        result.fetchedPages.add(page);
+                        result.lastFetched.put(page, caregivers);
+                    }
+
+                    @Override
+                    public void onPagesFetched(List<Caregiver> caregivers, boolean allSucceeded) {
+                        result.caregivers = caregivers;
+                        result.allSucceeded = allSucceeded;
+                        done.countDown();
+                    }
+                },
+                source,
+                (task, delayMs) -> mMainThread.schedule(task, delayMs, TimeUnit.MILLISECONDS),
+                BACKOFF_BASE_MS);
+        mMainThread.execute(fetcher::start);
+        assertTrue("The fetch did not complete", done.await(10, TimeUnit.SECONDS));
+        // Let deliveries after the merged result run
+        CountDownLatch idle = new CountDownLatch(1);
+        mMainThread.execute(idle::countDown);
+        assertTrue(idle.await(10, TimeUnit.SECONDS));
+        return result;
+    }
+
+    /**
+     * Requests a page from the local server on a network thread, and calls back on the main thread
+     */
+    private void fetchPage(int page, int results, CaregiverRepository.APICallbackListener listener) {
+        String url = mApiUrl + "&page=" + page + "&results=" + results;
+        mNetworkThreads.execute(() -> {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+                if (connection.getResponseCode() != 200) {
+                    connection.getErrorStream().close();
+                    mMainThread.execute(listener::resultError);
+                    return;
+                }
+                List<Caregiver> caregivers;
+                try (InputStreamReader reader = new InputStreamReader(connection.getInputStream(),
+                        StandardCharsets.UTF_8)) {
+                    caregivers = CaregiverJsonParser.parse(reader);
+                }
+                mMainThread.execute(() -> listener.resultCallback(caregivers));
+            } catch (IOException e) {
+                mMainThread.execute(listener::resultError);
+            }
+        });
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int page = Integer.parseInt(queryParam(exchange, "page"));
+        int results = Integer.parseInt(queryParam(exchange, "results"));
+        mRequestTimes.computeIfAbsent(page, p -> Collections.synchronizedList(new ArrayList<>()))
+                .add(System.currentTimeMillis());
+        mRequestOrder.add(page);
+
+        int concurrent = mConcurrent.incrementAndGet();
+        mMaxConcurrent.accumulateAndGet(concurrent, Math::max);
+        try {
+            Thread.sleep(mResponseDelayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int failures = mFailuresLeft.getOrDefault(page, 0);
+        int status = 200;
+        byte[] body;
+        if (failures != 0) {
+            if (failures > 0)
+                mFailuresLeft.put(page, failures - 1);
+            status = page % 2 == 0 ? 503 : 429;
+            body = "{\"error\":\"throttled\"}".getBytes(StandardCharsets.UTF_8);
+        } else {
+            body = page(page, results).getBytes(StandardCharsets.UTF_8);
+        }
+        mConcurrent.decrementAndGet();
+
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        for (String param : exchange.getRequestURI().getQuery().split("&"))
+            if (param.startsWith(name + "="))
+                return param.substring(name.length() + 1);
+        throw new IllegalArgumentException("Missing parameter " + name);
+    }
+
+    private static String page(int page, int results) {
+        StringBuilder json = new StringBuilder("{\"results\":[");
+        for (int i = 0; i < results; i++) {
+            if (i > 0)
+                json.append(',');
+            json.append("{\"name\":{\"first\":\"first").append(i).append("\",\"last\":\"last").append(i).append("\"},")
+                    .append("\"login\":{\"uuid\":\"p").append(page).append('-').append(i).append("\"},")
+                    .append("\"picture\":{\"thumbnail\":\"http://localhost/").append(page).append('/').append(i)
+                    .append(".jpg\"}}");
+        }
+        return json.append("],\"info\":{\"page\":").append(page).append("}}").toString();
+    }
+
+    private static List<Caregiver> caregivers(int page, String uuid) {
+        Caregiver caregiver = new Caregiver();
+        caregiver.uuid = uuid;
+        caregiver.mFirstName = "page" + page;
+        return Collections.singletonList(caregiver);
+    }
+
+    private static int[] pages(int numPages) {
+        int[] pages = new int[numPages];
+        for (int i = 0; i < numPages; i++)
+            pages[i] = i + 1;
+        return pages;
+    }
+
+    private static class Result {
+        final List<Integer> fetchedPages = new ArrayList<>();
+        final Map<Integer, List<Caregiver>> lastFetched = new HashMap<>();
+        List<Caregiver> caregivers;
+        boolean allSucceeded;
+    }
+}
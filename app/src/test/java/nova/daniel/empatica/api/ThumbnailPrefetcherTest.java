@@ -0,0 +1,361 @@
+package nova.daniel.empatica.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nova.daniel.empatica.model.Caregiver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link ThumbnailPrefetcher} against a local HTTP server that stands in for the picture server.
+ * <p>
+ * Pictures are downloaded over HTTP into a map that stands in for Glide's disk cache, and decoding only records
+ * the decoded sizes. The prefetch threads are bounded as in the app, with thumbnail_prefetch_threads threads.
+ */
+public class ThumbnailPrefetcherTest {
+
+    private static final int THREADS = 2; // thumbnail_prefetch_threads
+    private static final int[] SIZES = {96, 64};
+    private static final int KB = 1024;
+    // Budget large enough not to space the downloads
+    private static final long UNLIMITED_BYTES_PER_SECOND = 1024L * 1024 * 1024;
+    private static final long TIMEOUT_MS = 30000;
+    // Tolerance on the times measured by the server
+    private static final long TOLERANCE_MS = 25;
+
+    private HttpServer mServer;
+    private String mPicturesUrl;
+    private volatile boolean mMetered = false;
+
+    // Disk cache, and thumbnails decoded from it
+    private final Map<String, Long> mDiskCache = new ConcurrentHashMap<>();
+    private final Map<String, List<Integer>> mDecoded = new ConcurrentHashMap<>();
+
+    // Server state
+    private final Map<String, AtomicInteger> mRequests = new ConcurrentHashMap<>();
+    private final List<Long> mRequestTimes = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger mConcurrent = new AtomicInteger();
+    private final AtomicInteger mMaxConcurrent = new AtomicInteger();
+    private volatile int mPictureBytes = 4 * KB;
+    private volatile long mResponseDelayMs = 0;
+    private volatile CountDownLatch mResponseGate = new CountDownLatch(0);
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/pictures/", this::handle);
+        mServer.setExecutor(Executors.newFixedThreadPool(16));
+        mServer.start();
+        mPicturesUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/pictures/";
+    }
+
+    @After
+    public void tearDown() {
+        mResponseGate.countDown();
+        mServer.stop(0);
+    }
+
+    @Test
+    public void duplicateUrls_areDownloadedOnce() throws InterruptedException {
+        ThumbnailPrefetcher prefetcher = createPrefetcher(THREADS, unlimitedBudget());
+        List<Caregiver> caregivers = caregivers(30, 10);
+
+        prefetcher.prefetch(caregivers);
+        prefetcher.prefetch(caregivers);
+        assertTrue(prefetcher.awaitIdle(TIMEOUT_MS));
+
+        assertEquals(10, mRequests.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1, requests(i + ".jpg"));
+            assertEquals(asList(SIZES), mDecoded.get(url(i + ".jpg")));
+        }
+    }
+
+    @Test
+    public void failedUrls_areQueuedAgainByTheNextPrefetch() throws InterruptedException {
+        ThumbnailPrefetcher prefetcher = createPrefetcher(THREADS, unlimitedBudget());
+        List<Caregiver> caregivers = caregivers(4, 4);
+        caregivers.add(caregiver(url("missing.jpg")));
+
+        prefetcher.prefetch(caregivers);
+        assertTrue(prefetcher.awaitIdle(TIMEOUT_MS));
+        assertEquals(1, requests("missing.jpg"));
+        assertFalse(mDecoded.containsKey(url("missing.jpg")));
+
+        prefetcher.prefetch(caregivers);
+        assertTrue(prefetcher.awaitIdle(TIMEOUT_MS));
+        assertEquals(2, requests("missing.jpg"));
+        for (int i = 0; i < 4; i++)
+            assertEquals(1, requests(i + ".jpg"));
+    }
+
+    @Test
+    public void meteredNetwork_downloadsNothing() throws InterruptedException {
+        ThumbnailPrefetcher prefetcher = createPrefetcher(THREADS, unlimitedBudget());
+        List<Caregiver> caregivers = caregivers(5, 5);
+
+        mMetered = true;
+        prefetcher.prefetch(caregivers);
+        assertTrue(prefetcher.awaitIdle(TIMEOUT_MS));
+        assertEquals(0, mRequests.size());
+
+        // Nothing was queued, so the pictures are prefetched once the network is no longer metered
+        mMetered = false;
+        prefetcher.prefetch(caregivers);
+        assertTrue(prefetcher.awaitIdle(TIMEOUT_MS));
+        assertEquals(5, mRequests.size());
+    }
+
+    @Test
+    public void networkBecomingMetered_skipsTheQueuedDownloads() throws InterruptedException {
+        ThumbnailPrefetcher prefetcher = createPrefetcher(THREADS, unlimitedBudget());
+        List<Caregiver> caregivers = caregivers(10, 10);
+        mResponseGate = new CountDownLatch(1);
+
+        prefetcher.prefetch(caregivers);
+        awaitConcurrentRequests(THREADS);
+        mMetered = true;
+        mResponseGate.countDown();
+        assertTrue(prefetcher.awaitIdle(TIMEOUT_MS));
+        // Only the downloads started before the network became metered were made
+        assertEquals(THREADS, mRequests.size());
+
+        // The skipped pictures are prefetched by the next sync on an unmetered network, the others are cached
+        mMetered = false;
+        prefetcher.prefetch(caregivers);
+        assertTrue(prefetcher.awaitIdle(TIMEOUT_MS));
+        assertEquals(10, mRequests.size());
+        for (int i = 0; i < 10; i++)
+            assertEquals(1, requests(i + ".jpg"));
+    }
+
+    @Test
+    public void concurrentRequests_areBoundedByThePrefetchThreads() throws InterruptedException {
+        ThumbnailPrefetcher prefetcher = createPrefetcher(THREADS, unlimitedBudget());
+        mResponseDelayMs = 30;
+
+        prefetcher.prefetch(caregivers(20, 20));
+        assertTrue(prefetcher.awaitIdle(TIMEOUT_MS));
+
+        assertEquals(20, mRequests.size());
+        assertTrue("Max concurrent " + mMaxConcurrent.get(), mMaxConcurrent.get() <= THREADS);
+        assertEquals(THREADS, mMaxConcurrent.get());
+    }
+
+    @Test
+    public void concurrentDownloads_startOneAfterAnother() throws InterruptedException {
+        mPictureBytes = 8 * KB;
+        long pictureMs = 125;
+        int threads = 4;
+        ThumbnailPrefetcher prefetcher = createPrefetcher(threads, new BandwidthBudget(64 * KB, 8 * KB));
+
+        int pictures = 12;
+        prefetchTimed(prefetcher, pictures);
+
+        List<Long> times = sortedRequestTimes();
+        assertEquals(pictures, times.size());
+        for (int i = 1; i < times.size(); i++) {
+            long gap = times.get(i) - times.get(i - 1);
+            assertTrue("Download " + i + " started " + gap + " ms after the previous one",
+                    gap >= pictureMs - TOLERANCE_MS);
+        }
+    }
+
+    @Test
+    public void underestimatedDownloads_areReconciled() throws InterruptedException {
+        mPictureBytes = 16 * KB;
+        long pictureMs = 125;
+        int threads = 4;
+        BandwidthBudget budget = new BandwidthBudget(128 * KB, 2 * KB);
+        ThumbnailPrefetcher prefetcher = createPrefetcher(threads, budget);
+
+        int pictures = 12;
+        prefetchTimed(prefetcher, pictures);
+
+        List<Long> times = sortedRequestTimes();
+        assertEquals(pictures, times.size());
+        // Only the downloads started before the first ones were reconciled can exceed the budget
+        long elapsed = times.get(pictures - 1) - times.get(0);
+        long expected = (pictures - 1 - threads) * pictureMs;
+        assertTrue("Downloads took " + elapsed + " ms, at least " + expected + " ms expected",
+                elapsed >= expected - TOLERANCE_MS);
+        assertTrue(budget.getEstimatedBytes() > 2 * KB);
+    }
+
+    private ThumbnailPrefetcher createPrefetcher(int threads, BandwidthBudget budget) {
+        return new ThumbnailPrefetcher(new HttpPictureLoader(), () -> mMetered, ThumbnailPrefetcherTest::now,
+                budget, threads, Executors.defaultThreadFactory(), SIZES);
+    }
+
+    private static BandwidthBudget unlimitedBudget() {
+        return new BandwidthBudget(UNLIMITED_BYTES_PER_SECOND, 4 * KB);
+    }
+
+    /**
+     * Prefetches the given number of pictures, and waits for them.
+     * A first picture is downloaded outside the prefetcher, so the first timed request is not slowed down by
+     * the loading of the HTTP classes.
+     */
+    private void prefetchTimed(ThumbnailPrefetcher prefetcher, int pictures) throws InterruptedException {
+        try {
+            download(url("warm-up.jpg"));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        mRequestTimes.clear();
+        prefetcher.prefetch(caregivers(pictures, pictures));
+        assertTrue(prefetcher.awaitIdle(TIMEOUT_MS));
+    }
+
+    private void awaitConcurrentRequests(int requests) throws InterruptedException {
+        long deadline = now() + TIMEOUT_MS;
+        while (mConcurrent.get() < requests) {
+            assertTrue("Only " + mConcurrent.get() + " requests in flight", now() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Caregivers with the pictures 0.jpg to (urls - 1).jpg in turn
+     */
+    private List<Caregiver> caregivers(int size, int urls) {
+        List<Caregiver> caregivers = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            caregivers.add(caregiver(url((i % urls) + ".jpg")));
+        return caregivers;
+    }
+
+    private static Caregiver caregiver(String pictureUrl) {
+        Caregiver caregiver = new Caregiver();
+        caregiver.uuid = pictureUrl;
+        caregiver.mPictureURL = pictureUrl;
+        return caregiver;
+    }
+
+    private String url(String picture) {
+        return mPicturesUrl + picture;
+    }
+
+    private int requests(String picture) {
+        AtomicInteger requests = mRequests.get("/pictures/" + picture);
+        return requests == null ? 0 : requests.get();
+    }
+
+    private static List<Integer> asList(int[] values) {
+        List<Integer> list = new ArrayList<>(values.length);
+        for (int value : values)
+            list.add(value);
+        return list;
+    }
+
+    private List<Long> sortedRequestTimes() {
+        List<Long> times = new ArrayList<>(mRequestTimes);
+        Collections.sort(times);
+        return times;
+    }
+
+    private static long download(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[4096];
+            long bytes = 0;
+            for (int read; (read = in.read(buffer)) != -1; )
+                bytes += read;
+            return bytes;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Serves pictures of mPictureBytes bytes, and 404 for missing.jpg.
+     * A request stops counting as concurrent once its response starts, so the count never exceeds the
+     * requests the client has in flight.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (!path.endsWith("warm-up.jpg")) {
+            mRequests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+            mRequestTimes.add(now());
+        }
+        int concurrent = mConcurrent.incrementAndGet();
+        mMaxConcurrent.accumulateAndGet(concurrent, Math::max);
+        try {
+            if (mResponseDelayMs > 0)
+                Thread.sleep(mResponseDelayMs);
+            mResponseGate.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            mConcurrent.decrementAndGet();
+        }
+
+        if (path.endsWith("missing.jpg")) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        byte[] picture = new byte[mPictureBytes];
+        exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+        exchange.sendResponseHeaders(200, picture.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(picture);
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Downloads the pictures over HTTP into the disk cache, and records the decoded thumbnails
+     */
+    private class HttpPictureLoader implements ThumbnailPrefetcher.PictureLoader {
+
+        @Override
+        public long getCachedSize(String url) {
+            Long size = mDiskCache.get(url);
+            return size == null ? -1 : size;
+        }
+
+        @Override
+        public long download(String url) throws ExecutionException {
+            try {
+                long bytes = ThumbnailPrefetcherTest.download(url);
+                mDiskCache.put(url, bytes);
+                return bytes;
+            } catch (IOException e) {
+                throw new ExecutionException(e);
+            }
+        }
+
+        @Override
+        public void decode(String url, int size) {
+            mDecoded.computeIfAbsent(url, key -> Collections.synchronizedList(new ArrayList<>())).add(size);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package nova.daniel.empatica.autofit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import nova.daniel.empatica.TimeBuckets;
+import nova.daniel.empatica.model.CaregiverWorkload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link CandidateScorer} gives the same scores, picks and plans when it scores in parallel
+ * chunks as when it is forced to score serially.
+ * <p>
+ * The snapshots have at least 2,048 caregivers, so scoring is split in chunks when not forced serial, and
+ * only a few distinct workloads, so most candidates tie with others, also across chunk boundaries.
+ */
+public class CandidateScorerTest {
+
+    private static final int FIRST_HOUR = 8;
+    private static final int LAST_HOUR = 19;
+    private static final int NUM_ROOMS = 10;
+    private static final int MAX_WORK_HOURS = 5;
+    private static final int MAX_WEEK_SLOTS = 6;
+
+    private final Date mDay = new Date(TimeBuckets.atHour(1568808000000L, 12)); // 2019-09-18
+
+    @After
+    public void tearDown() {
+        CandidateScorer.setForceSerial(false);
+    }
+
+    @Test
+    public void parallelScoring_givesTheSameScoresAsSerial() {
+        for (int caregivers : new int[]{2048, 5000}) {
+            List<CaregiverWorkload> workloads = tiedWorkloads(new Random(caregivers), caregivers);
+            double[][] serial = scores(workloads, true);
+            double[][] parallel = scores(workloads, false);
+            for (int room = 0; room < NUM_ROOMS; room++)
+                assertArrayEquals("Scores of room " + (room + 1), serial[room], parallel[room], 0);
+        }
+    }
+
+    @Test
+    public void parallelScoring_picksTheSameTiedCandidatesAsSerial() {
+        for (int caregivers : new int[]{2048, 5000}) {
+            List<CaregiverWorkload> workloads = tiedWorkloads(new Random(caregivers), caregivers);
+            int[] serial = picks(workloads, true);
+            int[] parallel = picks(workloads, false);
+            assertArrayEquals(serial, parallel);
+        }
+    }
+
+    @Test
+    public void parallelScoring_plansTheSameDayAsSerial() {
+        for (int caregivers : new int[]{2048, 5000}) {
+            List<CaregiverWorkload> workloads = tiedWorkloads(new Random(caregivers), caregivers);
+            for (boolean optimal : new boolean[]{false, true}) {
+                int[][] serial = planDay(workloads, optimal, true);
+                int[][] parallel = planDay(workloads, optimal, false);
+                for (int hour = FIRST_HOUR; hour <= LAST_HOUR; hour++)
+                    assertArrayEquals((optimal ? "Optimal" : "Greedy") + " plan at " + hour,
+                            serial[hour], parallel[hour]);
+            }
+        }
+    }
+
+    /**
+     * Scores of every caregiver for every room at the first hour, NaN for caregivers that are not candidates
+     */
+    private double[][] scores(List<CaregiverWorkload> workloads, boolean forceSerial) {
+        CandidateScorer.setForceSerial(forceSerial);
+        CandidateScorer scorer = new CandidateScorer(createSnapshot(workloads), MAX_WEEK_SLOTS, createRules());
+        double[][] scores = new double[NUM_ROOMS][workloads.size()];
+        for (int room = 1; room <= NUM_ROOMS; room++) {
+            scorer.scoreRoom(FIRST_HOUR, room);
+            for (int caregiver = 0; caregiver < workloads.size(); caregiver++)
+                scores[room - 1][caregiver] = scorer.isEligible(caregiver) ? scorer.getScore(caregiver) : Double.NaN;
+        }
+        return scores;
+    }
+
+    /**
+     * Best candidate of every room at every hour, without assigning them, so the candidates stay tied
+     */
+    private int[] picks(List<CaregiverWorkload> workloads, boolean forceSerial) {
+        CandidateScorer.setForceSerial(forceSerial);
+        CandidateScorer scorer = new CandidateScorer(createSnapshot(workloads), MAX_WEEK_SLOTS, createRules());
+        int[] picks = new int[(LAST_HOUR - FIRST_HOUR + 1) * NUM_ROOMS];
+        int i = 0;
+        for (int hour = FIRST_HOUR; hour <= LAST_HOUR; hour++)
+            for (int room = 1; room <= NUM_ROOMS; room++)
+                picks[i++] = scorer.pickBest(hour, room);
+        return picks;
+    }
+
+    /**
+     * Plans every hour of the working day with the given strategy, as the auto-fit task does
+     *
+     * @return Caregivers assigned to the rooms of each hour, indexed by hour
+     */
+    private int[][] planDay(List<CaregiverWorkload> workloads, boolean optimal, boolean forceSerial) {
+        CandidateScorer.setForceSerial(forceSerial);
+        ScheduleSnapshot snapshot = createSnapshot(workloads);
+        CandidateScorer scorer = new CandidateScorer(snapshot, MAX_WEEK_SLOTS, createRules());
+        AssignmentStrategy strategy = optimal ? new OptimalAssignment() : new GreedyAssignment();
+
+        int[][] plan = new int[LAST_HOUR + 1][];
+        int filled = 0;
+        for (int hour = FIRST_HOUR; hour <= LAST_HOUR; hour++) {
+            List<Integer> rooms = new ArrayList<>();
+            for (int room = 1; room <= NUM_ROOMS; room++)
+                if (!snapshot.getRoomsForHour(hour).contains(room))
+                    rooms.add(room);
+            plan[hour] = strategy.assignHour(snapshot, scorer, hour, rooms);
+            for (int caregiver : plan[hour])
+                if (caregiver != CandidateScorer.NO_CANDIDATE)
+                    filled++;
+        }
+        assertTrue("The day should be planned", filled > 0);
+        return plan;
+    }
+
+    /**
+     * Caregivers with only a few distinct week and history counts, some of them already working an hour of
+     * the day in a few rooms, so most scores tie
+     */
+    private List<CaregiverWorkload> tiedWorkloads(Random random, int size) {
+        List<CaregiverWorkload> workloads = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            CaregiverWorkload workload = new CaregiverWorkload();
+            workload.uuid = "c" + i;
+            workload.mWeekCount = random.nextInt(3) == 0 ? MAX_WEEK_SLOTS : MAX_WORK_HOURS - 1;
+            workload.mHistoryCount = workload.mWeekCount + random.nextInt(2);
+            if (random.nextInt(20) == 0) {
+                int hour = FIRST_HOUR + random.nextInt(LAST_HOUR - FIRST_HOUR + 1);
+                workload.mSlots = TimeBuckets.atHour(mDay.getTime(), hour) + ":" + (1 + random.nextInt(2));
+            }
+            workloads.add(workload);
+        }
+        return workloads;
+    }
+
+    private ScheduleSnapshot createSnapshot(List<CaregiverWorkload> workloads) {
+        return ScheduleSnapshot.fromWorkloads(Collections.singletonList(mDay), createIndex(workloads.size()),
+                workloads);
+    }
+
+    private static CaregiverIndex createIndex(int size) {
+        List<String> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            ids.add("c" + i);
+        return new CaregiverIndex(ids);
+    }
+
+    private static List<ScoringRule> createRules() {
+        return Arrays.asList(
+                new OvertimeRule(MAX_WORK_HOURS, 1d),
+                new RoomProximityRule(2d),
+                new FairnessRule(3d));
+    }
+}
@@ -0,0 +1,110 @@
+package nova.daniel.empatica.autofit;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link HungarianSolver} with a brute force search over every assignment of small matrices.
+ */
+public class HungarianSolverTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void squareMatrices_matchBruteForce() {
+        Random random = new Random(4);
+        for (int i = 0; i < 500; i++) {
+            int size = 1 + random.nextInt(6);
+            assertOptimal(randomMatrix(random, size, size, 100));
+        }
+    }
+
+    @Test
+    public void rectangularMatrices_matchBruteForce() {
+        Random random = new Random(5);
+        for (int i = 0; i < 500; i++) {
+            int rows = 1 + random.nextInt(5);
+            int columns = rows + random.nextInt(4);
+            assertOptimal(randomMatrix(random, rows, columns, 100));
+        }
+    }
+
+    @Test
+    public void tiedCosts_matchBruteForce() {
+        // Few distinct costs, so most matrices have several optimal assignments
+        Random random = new Random(6);
+        for (int i = 0; i < 500; i++) {
+            int rows = 1 + random.nextInt(5);
+            int columns = rows + random.nextInt(3);
+            assertOptimal(randomMatrix(random, rows, columns, 3));
+        }
+    }
+
+    @Test
+    public void negativeCosts_matchBruteForce() {
+        // OptimalAssignment maximizes scores by negating them
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            int rows = 1 + random.nextInt(5);
+            int columns = rows + random.nextInt(4);
+            double[][] cost = randomMatrix(random, rows, columns, 100);
+            for (double[] row : cost)
+                for (int j = 0; j < row.length; j++)
+                    row[j] = -row[j] - 1000;
+            assertOptimal(cost);
+        }
+    }
+
+    @Test
+    public void emptyMatrix_returnsNoAssignment() {
+        assertEquals(0, HungarianSolver.solve(new double[0][]).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void moreRowsThanColumns_isRejected() {
+        HungarianSolver.solve(new double[3][2]);
+    }
+
+    private static void assertOptimal(double[][] cost) {
+        int[] columns = HungarianSolver.solve(cost);
+        assertEquals(cost.length, columns.length);
+
+        boolean[] used = new boolean[cost[0].length];
+        double total = 0;
+        for (int row = 0; row < cost.length; row++) {
+            assertTrue("Column " + columns[row] + " assigned twice", !used[columns[row]]);
+            used[columns[row]] = true;
+            total += cost[row][columns[row]];
+        }
+        assertEquals(bruteForce(cost, 0, new boolean[cost[0].length]), total, EPSILON);
+    }
+
+    /**
+     * Minimum total cost of assigning the rows from the given one, with the used columns excluded
+     */
+    private static double bruteForce(double[][] cost, int row, boolean[] used) {
+        if (row == cost.length)
+            return 0;
+        double best = Double.POSITIVE_INFINITY;
+        for (int column = 0; column < used.length; column++) {
+            if (used[column])
+                continue;
+            used[column] = true;
+            best = Math.min(best, cost[row][column] + bruteForce(cost, row + 1, used));
+            used[column] = false;
+        }
+        return best;
+    }
+
+    private static double[][] randomMatrix(Random random, int rows, int columns, int values) {
+        double[][] cost = new double[rows][columns];
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < columns; j++)
+                cost[i][j] = random.nextInt(values);
+        return cost;
+    }
+}
@@ -0,0 +1,192 @@
+package nova.daniel.empatica.autofit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import nova.daniel.empatica.TimeBuckets;
+import nova.daniel.empatica.model.CaregiverWorkload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link OptimalAssignment} with {@link GreedyAssignment} for speed and total score,
+ * at 100, 1,000 and 10,000 caregivers.
+ * <p>
+ * Both strategies plan the same hour over identical snapshots, and their plans are scored with the scores
+ * of every caregiver for every room before the hour, which is what the optimal strategy maximizes.
+ */
+public class OptimalAssignmentTest {
+
+    private static final int HOUR = 10;
+    private static final int NUM_ROOMS = 10;
+    private static final int MAX_WORK_HOURS = 5;
+    private static final int MAX_WEEK_SLOTS = 6;
+    private static final double EPSILON = 1e-9;
+
+    private final Date mDay = new Date(TimeBuckets.atHour(1568808000000L, 12)); // 2019-09-18
+    private final List<Integer> mRooms = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        CandidateScorer.setForceSerial(true);
+        for (int room = 1; room <= NUM_ROOMS; room++)
+            mRooms.add(room);
+    }
+
+    @After
+    public void tearDown() {
+        CandidateScorer.setForceSerial(false);
+    }
+
+    @Test
+    public void optimal_neverScoresLessThanGreedy() {
+        Random random = new Random(1);
+        int improved = 0;
+        for (int i = 0; i < 300; i++) {
+            List<CaregiverWorkload> workloads = randomWorkloads(random, 5 + random.nextInt(20));
+            Result greedy = plan(new GreedyAssignment(), workloads);
+            Result optimal = plan(new OptimalAssignment(), workloads);
+
+            assertEquals("Filled rooms", greedy.filled, optimal.filled);
+            assertTrue("Optimal " + optimal.score + " < greedy " + greedy.score,
+                    optimal.score >= greedy.score - EPSILON);
+            if (optimal.score > greedy.score + EPSILON)
+                improved++;
+        }
+        assertTrue("The fixtures should include hours where greedy is not optimal", improved > 0);
+    }
+
+    @Test
+    public void fewerCandidatesThanRooms_leavesRoomsEmpty() {
+        List<CaregiverWorkload> workloads = randomWorkloads(new Random(2), 3);
+        for (CaregiverWorkload workload : workloads)
+            workload.mWeekCount = 0;
+        Result optimal = plan(new OptimalAssignment(), workloads);
+        assertEquals(3, optimal.filled);
+    }
+
+    /**
+     * Reports the time per hour and total score of both strategies. Hours are solved in O(rooms^2 * caregivers),
+     * so 10 rooms for 10,000 caregivers stays well within an auto-fit run.
+     */
+    @Test
+    public void benchmark_greedyVsOptimal() {
+        for (int caregivers : new int[]{100, 1000, 10000}) {
+            List<CaregiverWorkload> workloads = randomWorkloads(new Random(caregivers), caregivers);
+            int runs = Math.max(5, 20000 / caregivers);
+
+            // Warm up both paths
+            for (int i = 0; i < runs; i++) {
+                plan(new GreedyAssignment(), workloads);
+                plan(new OptimalAssignment(), workloads);
+            }
+
+            Result greedy = null;
+            Result optimal = null;
+            long greedyNanos = 0;
+            long optimalNanos = 0;
+            for (int i = 0; i < runs; i++) {
+                greedy = plan(new GreedyAssignment(), workloads);
+                optimal = plan(new OptimalAssignment(), workloads);
+                greedyNanos += greedy.nanos;
+                optimalNanos += optimal.nanos;
+            }
+            System.out.println(String.format("%,d caregivers: greedy %.3f ms, score %.2f; optimal %.3f ms, score %.2f",
+                    caregivers, greedyNanos / 1e6 / runs, greedy.score, optimalNanos / 1e6 / runs, optimal.score));
+
+            assertTrue(optimal.score >= greedy.score - EPSILON);
+            assertTrue("Optimal hour took " + optimalNanos / runs + " ns", optimalNanos / runs < 500_000_000L);
+        }
+    }
+
+    /**
+     * Plans one hour with the given strategy over a new snapshot, and scores the plan with the scores of
+     * the snapshot before the hour.
+     */
+    private Result plan(AssignmentStrategy strategy, List<CaregiverWorkload> workloads) {
+        CaregiverIndex index = createIndex(workloads.size());
+        double[][] scores = scoresBeforeHour(index, workloads);
+
+        ScheduleSnapshot snapshot = ScheduleSnapshot.fromWorkloads(Collections.singletonList(mDay), index, workloads);
+        CandidateScorer scorer = new CandidateScorer(snapshot, MAX_WEEK_SLOTS, createRules());
+        long start = System.nanoTime();
+        int[] assigned = strategy.assignHour(snapshot, scorer, HOUR, mRooms);
+        long nanos = System.nanoTime() - start;
+
+        Result result = new Result();
+        result.nanos = nanos;
+        for (int i = 0; i < assigned.length; i++) {
+            if (assigned[i] != CandidateScorer.NO_CANDIDATE) {
+                assertTrue("Caregiver " + assigned[i] + " is not a candidate", !Double.isNaN(scores[i][assigned[i]]));
+                result.filled++;
+                result.score += scores[i][assigned[i]];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Scores of every candidate for every room, NaN for caregivers that are not candidates
+     */
+    private double[][] scoresBeforeHour(CaregiverIndex index, List<CaregiverWorkload> workloads) {
+        ScheduleSnapshot snapshot = ScheduleSnapshot.fromWorkloads(Collections.singletonList(mDay), index, workloads);
+        CandidateScorer scorer = new CandidateScorer(snapshot, MAX_WEEK_SLOTS, createRules());
+        double[][] scores = new double[mRooms.size()][index.size()];
+        for (int i = 0; i < mRooms.size(); i++) {
+            scorer.scoreRoom(HOUR, mRooms.get(i));
+            for (int caregiver = 0; caregiver < index.size(); caregiver++)
+                scores[i][caregiver] = scorer.isEligible(caregiver) ? scorer.getScore(caregiver) : Double.NaN;
+        }
+        return scores;
+    }
+
+    /**
+     * Caregivers with random week and history counts, some of them already working other hours of the day
+     * in random rooms, so all scoring rules apply
+     */
+    private List<CaregiverWorkload> randomWorkloads(Random random, int size) {
+        List<CaregiverWorkload> workloads = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            CaregiverWorkload workload = new CaregiverWorkload();
+            workload.uuid = "c" + i;
+            workload.mWeekCount = random.nextInt(MAX_WEEK_SLOTS + 1);
+            workload.mHistoryCount = workload.mWeekCount + random.nextInt(4);
+            if (random.nextInt(3) == 0) {
+                int hour = random.nextBoolean() ? HOUR - 1 : HOUR + 1;
+                int room = 1 + random.nextInt(NUM_ROOMS);
+                workload.mSlots = TimeBuckets.atHour(mDay.getTime(), hour) + ":" + room;
+            }
+            workloads.add(workload);
+        }
+        return workloads;
+    }
+
+    private static CaregiverIndex createIndex(int size) {
+        List<String> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            ids.add("c" + i);
+        return new CaregiverIndex(ids);
+    }
+
+    private static List<ScoringRule> createRules() {
+        return Arrays.asList(
+                new OvertimeRule(MAX_WORK_HOURS, 1d),
+                new RoomProximityRule(2d),
+                new FairnessRule(3d));
+    }
+
+    private static class Result {
+        long nanos;
+        int filled;
+        double score;
+    }
+}
@@ -0,0 +1,427 @@
+package nova.daniel.empatica.autofit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import nova.daniel.empatica.TimeBuckets;
+import nova.daniel.empatica.model.CaregiverWorkload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the auto-fit over a {@link ScheduleSnapshot} assigns the same caregivers as the original task, which
+ * ran the per-slot queries of AppointmentRepository for every hour, room and candidate.
+ * <p>
+ * The original task is replayed over an in-memory appointment table, with the same inclusive ranges as its
+ * queries, computed with Calendar. Its candidates were kept in a HashMap, so ties were broken in an unspecified
+ * order; the replay breaks them by caregiver index, as {@link CandidateScorer} does.
+ */
+public class ScheduleSnapshotTest {
+
+    private static final int START_HOUR_WORKDAY = 9;
+    private static final int END_HOUR_WORKDAY = 17;
+    private static final int MAX_WORK_HOURS = 5;
+    private static final int MAX_OVERTIME_HOURS = 1;
+    private static final int NUM_ROOMS = 10;
+
+    private TimeZone mDefaultTimeZone;
+    private Locale mDefaultLocale;
+
+    @Before
+    public void setUp() {
+        mDefaultTimeZone = TimeZone.getDefault();
+        mDefaultLocale = Locale.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Lisbon"));
+        Locale.setDefault(Locale.UK); // Weeks start on Monday
+        TimeBuckets.reset();
+        CandidateScorer.setForceSerial(true);
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mDefaultTimeZone);
+        Locale.setDefault(mDefaultLocale);
+        TimeBuckets.reset();
+        CandidateScorer.setForceSerial(false);
+    }
+
+    @Test
+    public void singleDay_matchesPerSlotQueries() {
+        List<Date> days = Collections.singletonList(date(2019, Calendar.SEPTEMBER, 18));
+        assertSamePlan(days);
+    }
+
+    @Test
+    public void severalDays_matchPerSlotQueriesDayByDay() {
+        List<Date> days = Arrays.asList(
+                date(2019, Calendar.SEPTEMBER, 18),
+                date(2019, Calendar.SEPTEMBER, 19),
+                date(2019, Calendar.SEPTEMBER, 20));
+        assertSamePlan(days);
+    }
+
+    @Test
+    public void daylightSavingWeek_matchesPerSlotQueries() {
+        // Clocks go back on the Sunday of this week
+        List<Date> days = Arrays.asList(
+                date(2019, Calendar.OCTOBER, 24),
+                date(2019, Calendar.OCTOBER, 25));
+        assertSamePlan(days);
+    }
+
+    /**
+     * Scoring a room only reads the snapshot arrays, so once warmed up it must not allocate,
+     * and a whole day for a large number of caregivers is planned well within a second.
+     */
+    @Test
+    public void scoringRoom_doesNotAllocate() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+
+        List<Date> days = Collections.singletonList(date(2019, Calendar.SEPTEMBER, 18));
+        CaregiverIndex index = createIndex(2000);
+        ScheduleSnapshot snapshot = ScheduleSnapshot.fromWorkloads(days, index, new ArrayList<>());
+        CandidateScorer scorer = new CandidateScorer(snapshot, MAX_WORK_HOURS + MAX_OVERTIME_HOURS, createRules());
+
+        for (int i = 0; i < 1000; i++)
+            scorer.pickBest(START_HOUR_WORKDAY, 1 + i % NUM_ROOMS);
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++)
+            scorer.pickBest(START_HOUR_WORKDAY, 1 + i % NUM_ROOMS);
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("pickBest allocated " + allocated + " bytes in 1000 calls", allocated < 1000);
+
+        long start = System.nanoTime();
+        planWithSnapshot(index, days, new ArrayList<>());
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        assertTrue("Planning a day for 2000 caregivers took " + elapsedMs + " ms", elapsedMs < 1000);
+    }
+
+    private void assertSamePlan(List<Date> days) {
+        CaregiverIndex index = createIndex(8);
+        List<Row> existing = createFixture(days.get(0));
+
+        List<Row> expected = new ArrayList<>();
+        List<Row> table = new ArrayList<>(existing);
+        for (Date day : days)
+            expected.addAll(planWithPerSlotQueries(index, day, table));
+
+        List<Row> actual = planWithSnapshot(index, days, existing);
+
+        assertTrue("The fixture should fill some rooms", expected.size() > 10);
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Appointments covering the cases of the scoring rules around the first day being scheduled
+     */
+    private static List<Row> createFixture(Date day) {
+        List<Row> rows = new ArrayList<>();
+        long weekStart = weekStart(day.getTime());
+        // c0 has reached the hours without over-time in the current week, c1 has also used the over-time
+        for (int i = 0; i < MAX_WORK_HOURS; i++)
+            rows.add(new Row("c0", atHour(weekStart, 9 + i), 1 + i));
+        for (int i = 0; i < MAX_WORK_HOURS + MAX_OVERTIME_HOURS; i++)
+            rows.add(new Row("c1", atHour(weekStart, 9 + i), 6));
+        // c2 already works in room 3 at 10:00, so it is busy then and close to rooms 2 to 4
+        rows.add(new Row("c2", atHour(day.getTime(), 10), 3));
+        // c4 takes room 1 at 9:00, and a caregiver that is no longer a candidate takes room 2 at 11:00
+        rows.add(new Row("c4", atHour(day.getTime(), 9), 1));
+        rows.add(new Row("gone", atHour(day.getTime(), 11), 2));
+        // Past weeks, so the least worked caregivers are c5, c6 and c7
+        for (int week = 1; week <= 4; week++) {
+            long past = addWeeks(day.getTime(), -week);
+            rows.add(new Row("c2", atHour(past, 9), 1));
+            rows.add(new Row("c3", atHour(past, 9), 2));
+            rows.add(new Row("c3", atHour(past, 10), 2));
+            rows.add(new Row("c4", atHour(past, 11), 3));
+        }
+        // Older than the 4 past weeks, not counted
+        rows.add(new Row("c5", atHour(addWeeks(day.getTime(), -6), 9), 4));
+        return rows;
+    }
+
+    private static CaregiverIndex createIndex(int size) {
+        List<String> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            ids.add("c" + i);
+        return new CaregiverIndex(ids);
+    }
+
+    private static List<ScoringRule> createRules() {
+        return Arrays.asList(
+                new OvertimeRule(MAX_WORK_HOURS, 1d),
+                new RoomProximityRule(2d),
+                new FairnessRule(3d));
+    }
+
+    /**
+     * Plans the days as AutoFitOperationTask does, with the greedy strategy
+     */
+    private static List<Row> planWithSnapshot(CaregiverIndex index, List<Date> days, List<Row> existing) {
+        ScheduleSnapshot snapshot = ScheduleSnapshot.fromWorkloads(days, index, workloads(index, days, existing));
+        CandidateScorer scorer = new CandidateScorer(snapshot, MAX_WORK_HOURS + MAX_OVERTIME_HOURS, createRules());
+        AssignmentStrategy strategy = new GreedyAssignment();
+
+        List<Row> plan = new ArrayList<>();
+        for (int day = 0; day < days.size(); day++) {
+            snapshot.selectDay(day);
+            for (int hour = START_HOUR_WORKDAY; hour < END_HOUR_WORKDAY; hour++) {
+                long date = atHour(days.get(day).getTime(), hour);
+                List<Integer> rooms = availableRooms(snapshot.getRoomsForHour(hour));
+                int[] candidates = strategy.assignHour(snapshot, scorer, hour, rooms);
+                for (int i = 0; i < candidates.length; i++)
+                    if (candidates[i] != CandidateScorer.NO_CANDIDATE)
+                        plan.add(new Row(index.getId(candidates[i]), date, rooms.get(i)));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Aggregates the table as the workload query of CaregiverDAO does
+     */
+    private static List<CaregiverWorkload> workloads(CaregiverIndex index, List<Date> days, List<Row> table) {
+        long first = days.get(0).getTime();
+        long weekStart = weekStart(first);
+        long weekEnd = addWeeks(weekStart, 1);
+        long historyStart = weekStart(addWeeks(dayStart(first), -4));
+        long historyEnd = weekEnd(first);
+        long slotsStart = Long.MAX_VALUE;
+        long slotsEnd = Long.MIN_VALUE;
+        for (Date day : days) {
+            slotsStart = Math.min(slotsStart, dayStart(day.getTime()));
+            slotsEnd = Math.max(slotsEnd, dayEnd(day.getTime()));
+        }
+
+        Map<String, CaregiverWorkload> workloads = new HashMap<>();
+        for (int i = 0; i < index.size(); i++)
+            workload(workloads, index.getId(i));
+        for (Row row : table) {
+            CaregiverWorkload workload = workload(workloads, row.caregiverId);
+            if (row.date >= weekStart && row.date <= weekEnd)
+                workload.mWeekCount++;
+            if (row.date >= historyStart && row.date <= historyEnd)
+                workload.mHistoryCount++;
+            if (row.date >= slotsStart && row.date <= slotsEnd) {
+                String slot = row.date + ":" + row.room;
+                workload.mSlots = workload.mSlots == null ? slot : workload.mSlots + "," + slot;
+            }
+        }
+        return new ArrayList<>(workloads.values());
+    }
+
+    private static CaregiverWorkload workload(Map<String, CaregiverWorkload> workloads, String caregiverId) {
+        CaregiverWorkload workload = workloads.get(caregiverId);
+        if (workload == null) {
+            workload = new CaregiverWorkload();
+            workload.uuid = caregiverId;
+            workloads.put(caregiverId, workload);
+        }
+        return workload;
+    }
+
+    /**
+     * Replays the original task for a single day: every hour, room and candidate queries the table,
+     * and every assigned slot is inserted before the next room.
+     */
+    private static List<Row> planWithPerSlotQueries(CaregiverIndex index, Date day, List<Row> table) {
+        List<Row> plan = new ArrayList<>();
+        for (int hour = START_HOUR_WORKDAY; hour < END_HOUR_WORKDAY; hour++) {
+            long date = atHour(day.getTime(), hour);
+            long hourStart = date;
+            long hourEnd = date + 59 * 60 * 1000L + 59 * 1000L;
+
+            List<Integer> takenRooms = new ArrayList<>();
+            for (Row row : table)
+                if (row.date >= hourStart && row.date <= hourEnd)
+                    takenRooms.add(row.room);
+
+            for (int room : availableRooms(takenRooms)) {
+                int minHistory = Integer.MAX_VALUE;
+                for (int i = 0; i < index.size(); i++)
+                    minHistory = Math.min(minHistory, countHistory(table, index.getId(i), date));
+
+                String best = null;
+                double bestScore = 0;
+                for (int i = 0; i < index.size(); i++) {
+                    String candidate = index.getId(i);
+                    if (isBusy(table, candidate, hourStart, hourEnd))
+                        continue;
+                    int weekCount = countWeek(table, candidate, date);
+                    if (weekCount >= MAX_WORK_HOURS + MAX_OVERTIME_HOURS)
+                        continue;
+
+                    double score = weekCount < MAX_WORK_HOURS ? 1d : 0d;
+                    score += roomProximityScore(table, candidate, date, room);
+                    if (countHistory(table, candidate, date) <= minHistory)
+                        score += 3d;
+                    if (best == null || score > bestScore) {
+                        best = candidate;
+                        bestScore = score;
+                    }
+                }
+                if (best != null) {
+                    Row slot = new Row(best, date, room);
+                    table.add(slot);
+                    plan.add(slot);
+                }
+            }
+        }
+        return plan;
+    }
+
+    private static boolean isBusy(List<Row> table, String caregiverId, long start, long end) {
+        for (Row row : table)
+            if (row.caregiverId.equals(caregiverId) && row.date >= start && row.date <= end)
+                return true;
+        return false;
+    }
+
+    private static int countWeek(List<Row> table, String caregiverId, long date) {
+        long start = weekStart(date);
+        return count(table, caregiverId, start, addWeeks(start, 1));
+    }
+
+    private static int countHistory(List<Row> table, String caregiverId, long date) {
+        return count(table, caregiverId, weekStart(addWeeks(dayStart(date), -4)), weekEnd(dayEnd(date)));
+    }
+
+    private static int count(List<Row> table, String caregiverId, long start, long end) {
+        int count = 0;
+        for (Row row : table)
+            if (row.caregiverId.equals(caregiverId) && row.date >= start && row.date <= end)
+                count++;
+        return count;
+    }
+
+    private static double roomProximityScore(List<Row> table, String caregiverId, long date, int currentRoom) {
+        double score = 0;
+        long start = dayStart(date);
+        long end = dayEnd(date);
+        for (Row row : table) {
+            if (!row.caregiverId.equals(caregiverId) || row.date < start || row.date > end)
+                continue;
+            int distance = Math.abs(row.room - currentRoom);
+            double newScore = distance == 0 ? 2d : 2d / distance;
+            if (newScore > score)
+                score = newScore;
+        }
+        return score;
+    }
+
+    private static List<Integer> availableRooms(List<Integer> takenRooms) {
+        List<Integer> rooms = new ArrayList<>();
+        for (int room = 1; room <= NUM_ROOMS; room++)
+            if (!takenRooms.contains(room))
+                rooms.add(room);
+        return rooms;
+    }
+
+    // Calendar based ranges, as computed by the original Utils helpers
+
+    private static Date date(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month, day, 12, 0);
+        return calendar.getTime();
+    }
+
+    private static long atHour(long time, int hour) {
+        Calendar calendar = calendar(time);
+        calendar.set(Calendar.HOUR_OF_DAY, hour);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    private static long dayStart(long time) {
+        return atHour(time, 0);
+    }
+
+    private static long dayEnd(long time) {
+        Calendar calendar = calendar(time);
+        calendar.set(Calendar.HOUR_OF_DAY, 23);
+        calendar.set(Calendar.MINUTE, 59);
+        return calendar.getTimeInMillis();
+    }
+
+    private static long weekStart(long time) {
+        Calendar calendar = calendar(time);
+        calendar.set(Calendar.DAY_OF_WEEK, calendar.getFirstDayOfWeek());
+        return atHour(calendar.getTimeInMillis(), 0);
+    }
+
+    private static long weekEnd(long time) {
+        Calendar calendar = calendar(weekStart(time));
+        calendar.add(Calendar.DAY_OF_YEAR, 6);
+        calendar.set(Calendar.HOUR_OF_DAY, 23);
+        calendar.set(Calendar.MINUTE, 59);
+        return calendar.getTimeInMillis();
+    }
+
+    private static long addWeeks(long time, int weeks) {
+        Calendar calendar = calendar(time);
+        calendar.add(Calendar.WEEK_OF_YEAR, weeks);
+        return calendar.getTimeInMillis();
+    }
+
+    private static Calendar calendar(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        return calendar;
+    }
+
+    /**
+     * Appointment in the in-memory table, and slot of a plan
+     */
+    private static class Row {
+        final String caregiverId;
+        final long date;
+        final int room;
+
+        Row(String caregiverId, long date, int room) {
+            this.caregiverId = caregiverId;
+            this.date = date;
+            this.room = room;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Row))
+                return false;
+            Row row = (Row) o;
+            return caregiverId.equals(row.caregiverId) && date == row.date && room == row.room;
+        }
+
+        @Override
+        public int hashCode() {
+            return (caregiverId.hashCode() * 31 + Long.hashCode(date)) * 31 + room;
+        }
+
+        @Override
+        public String toString() {
+            return caregiverId + "@" + new Date(date) + "#" + room;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package nova.daniel.empatica.model;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import nova.daniel.empatica.TimeBuckets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link HourSlotModel#buildDay(List)} builds the same day model as the per-hour scan it replaced,
+ * which went through the whole appointment list for each of the 24 hours and read the hour of each appointment
+ * with a new Calendar, and benchmarks both.
+ */
+public class HourSlotModelTest {
+
+    private static final int NUM_ROOMS = 10;
+
+    private TimeZone mDefaultTimeZone;
+    private Locale mDefaultLocale;
+
+    @Before
+    public void setUp() {
+        mDefaultTimeZone = TimeZone.getDefault();
+        mDefaultLocale = Locale.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Lisbon"));
+        Locale.setDefault(Locale.UK);
+        TimeBuckets.reset();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mDefaultTimeZone);
+        Locale.setDefault(mDefaultLocale);
+        TimeBuckets.reset();
+    }
+
+    @Test
+    public void buildDay_matchesPerHourScan() {
+        List<Appointment> appointments = day(2019, Calendar.SEPTEMBER, 18, 240, new Random(18));
+        assertSameDay(perHourScan(appointments), HourSlotModel.buildDay(appointments));
+    }
+
+    @Test
+    public void buildDay_onDaylightSavingDays_matchesPerHourScan() {
+        // Clocks go forward on March 31 and back on October 27 in 2019
+        for (int[] date : new int[][]{{2019, Calendar.MARCH, 31}, {2019, Calendar.OCTOBER, 27}}) {
+            List<Appointment> appointments = new ArrayList<>();
+            long dayStart = TimeBuckets.dayStart(date(date[0], date[1], date[2], 0));
+            for (long time = dayStart; time <= TimeBuckets.dayEnd(dayStart); time += 20 * 60 * 1000L)
+                appointments.add(appointment(new Date(time), appointments.size() % NUM_ROOMS + 1));
+            assertSameDay(perHourScan(appointments), HourSlotModel.buildDay(appointments));
+        }
+    }
+
+    @Test
+    public void buildDay_withoutAppointments_hasEmptyHours() {
+        assertEmptyDay(HourSlotModel.buildDay(null));
+        assertEmptyDay(HourSlotModel.buildDay(new ArrayList<>()));
+    }
+
+    /**
+     * Reports the latency and allocation of building the day model from 80 and 240 appointments, in one pass and
+     * with the per-hour scan, and checks the single pass allocates at least 10 times less.
+     */
+    @Test
+    public void benchmark_buildDayVsPerHourScan() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+
+        for (int size : new int[]{80, 240}) {
+            List<Appointment> appointments = day(2019, Calendar.SEPTEMBER, 18, size, new Random(size));
+            int runs = 200;
+            for (int i = 0; i < runs; i++) {
+                HourSlotModel.buildDay(appointments);
+                perHourScan(appointments);
+            }
+
+            long threadId = Thread.currentThread().getId();
+            long bytes = allocations.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for (int i = 0; i < runs; i++)
+                assertEquals(24, HourSlotModel.buildDay(appointments).size());
+            long passNanos = (System.nanoTime() - start) / runs;
+            long passBytes = (allocations.getThreadAllocatedBytes(threadId) - bytes) / runs;
+
+            bytes = allocations.getThreadAllocatedBytes(threadId);
+            start = System.nanoTime();
+            for (int i = 0; i < runs; i++)
+                assertEquals(24, perHourScan(appointments).size());
+            long scanNanos = (System.nanoTime() - start) / runs;
+            long scanBytes = (allocations.getThreadAllocatedBytes(threadId) - bytes) / runs;
+
+            System.out.println(String.format("%d appointments: single pass %.1f us, %,d bytes; " +
+                            "per-hour scan %.1f us, %,d bytes", size, passNanos / 1e3, passBytes,
+                    scanNanos / 1e3, scanBytes));
+            assertTrue("Single pass allocated " + passBytes + " bytes, per-hour scan " + scanBytes,
+                    passBytes * 10 < scanBytes);
+        }
+    }
+
+    private static void assertEmptyDay(List<HourSlotModel> slots) {
+        assertEquals(24, slots.size());
+        for (int hour = 0; hour < 24; hour++) {
+            assertEquals(hour, slots.get(hour).getHour());
+            assertEquals(hour + ":00", slots.get(hour).getHourLabel());
+            assertTrue(slots.get(hour).getItemArrayList().isEmpty());
+        }
+    }
+
+    private static void assertSameDay(List<HourSlotModel> expected, List<HourSlotModel> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int hour = 0; hour < expected.size(); hour++) {
+            assertEquals(expected.get(hour).getHour(), actual.get(hour).getHour());
+            assertEquals(expected.get(hour).getHourLabel(), actual.get(hour).getHourLabel());
+            List<Appointment> expectedAppointments = expected.get(hour).getItemArrayList();
+            List<Appointment> actualAppointments = actual.get(hour).getItemArrayList();
+            assertEquals("Appointments at " + hour, expectedAppointments.size(), actualAppointments.size());
+            for (int i = 0; i < expectedAppointments.size(); i++)
+                assertSame(expectedAppointments.get(i), actualAppointments.get(i));
+        }
+    }
+
+    /**
+     * Day model built as Hospital did before the single pass
+     */
+    private static List<HourSlotModel> perHourScan(List<Appointment> appointments) {
+        List<HourSlotModel> slots = new ArrayList<>();
+        for (int i = 0; i <= 23; i++)
+            slots.add(new HourSlotModel(i, i + ":00", getAppointmentsByHour(appointments, i)));
+        return slots;
+    }
+
+    private static List<Appointment> getAppointmentsByHour(List<Appointment> appointments, int hour) {
+        List<Appointment> hourAppointments = new ArrayList<>();
+        if (appointments != null)
+            for (Appointment appointment : appointments) {
+                if (calendarHour(appointment) == hour)
+                    hourAppointments.add(appointment);
+            }
+        return hourAppointments;
+    }
+
+    /**
+     * Hour of the appointment as Appointment.getHour read it, with a new Calendar
+     */
+    private static int calendarHour(Appointment appointment) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(appointment.mDate);
+        return cal.get(Calendar.HOUR_OF_DAY);
+    }
+
+    /**
+     * Appointments at random hours of the working day, in random order, as the day query can return them
+     */
+    private static List<Appointment> day(int year, int month, int day, int size, Random random) {
+        List<Appointment> appointments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            appointments.add(appointment(new Date(date(year, month, day, 8 + random.nextInt(12))),
+                    1 + random.nextInt(NUM_ROOMS)));
+        return appointments;
+    }
+
+    private static Appointment appointment(Date date, int room) {
+        Appointment appointment = new Appointment();
+        appointment.mDate = date;
+        appointment.mRoom = room;
+        return appointment;
+    }
+
+    private static long date(int year, int month, int day, int hour) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(year, month, day, hour, 0);
+        return cal.getTimeInMillis();
+    }
+}